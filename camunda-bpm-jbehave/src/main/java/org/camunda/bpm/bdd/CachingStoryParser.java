@@ -0,0 +1,247 @@
+package org.camunda.bpm.bdd;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jbehave.core.configuration.Keywords;
+import org.jbehave.core.i18n.LocalizedKeywords;
+import org.jbehave.core.model.ExamplesTable;
+import org.jbehave.core.model.ExamplesTableFactory;
+import org.jbehave.core.model.Story;
+import org.jbehave.core.parsers.RegexStoryParser;
+import org.jbehave.core.parsers.StoryParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.XStreamException;
+import com.thoughtworks.xstream.converters.Converter;
+import com.thoughtworks.xstream.converters.MarshallingContext;
+import com.thoughtworks.xstream.converters.UnmarshallingContext;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+
+/**
+ * Story parser caching parsed stories by path and content hash. <br />
+ * Parsed stories are kept in memory (JBehave parses a story once for the
+ * JUnit description and once for the run) and stored as XML in the cache
+ * directory, so unchanged stories are not parsed again by later runs.
+ * Examples tables are stored as text and recreated by the
+ * {@link ExamplesTableFactory}. Stories with a lifecycle are cached in memory
+ * only. Only JBehave model types are read from the cache. Unreadable cache
+ * entries are ignored and replaced, the first failure is logged. <br />
+ * The cache key covers the JBehave version, the parser and the keywords
+ * (including their locale), so a changed configuration does not use stories
+ * parsed with another one.
+ *
+ * @author Simon Zambrovski, Holisticon AG
+ */
+public class CachingStoryParser implements StoryParser {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CachingStoryParser.class);
+  private static final String HASH_SEPARATOR = "\n";
+
+  private final ConcurrentMap<String, Story> parsed = Maps.newConcurrentMap();
+  private final AtomicBoolean warned = new AtomicBoolean();
+  private final StoryParser delegate;
+  private final File directory;
+  private final XStream xstream;
+  private final String configuration;
+
+  /**
+   * Creates the parser with default keywords and examples table factory,
+   * storing in {@link JBehaveConstants#STORY_CACHE_DIRECTORY}.
+   */
+  public CachingStoryParser() {
+    this(new ExamplesTableFactory());
+  }
+
+  /**
+   * Creates the parser with default keywords, storing in
+   * {@link JBehaveConstants#STORY_CACHE_DIRECTORY}.
+   *
+   * @param examplesTableFactory
+   *          factory of the examples tables.
+   */
+  public CachingStoryParser(final ExamplesTableFactory examplesTableFactory) {
+    this(new LocalizedKeywords(), examplesTableFactory);
+  }
+
+  /**
+   * Creates the parser storing in
+   * {@link JBehaveConstants#STORY_CACHE_DIRECTORY}.
+   *
+   * @param keywords
+   *          keywords of the stories.
+   * @param examplesTableFactory
+   *          factory of the examples tables.
+   */
+  public CachingStoryParser(final Keywords keywords, final ExamplesTableFactory examplesTableFactory) {
+    this(new RegexStoryParser(keywords, examplesTableFactory), keywords, examplesTableFactory, new File(JBehaveConstants.STORY_CACHE_DIRECTORY));
+  }
+
+  /**
+   * Creates the parser.
+   *
+   * @param delegate
+   *          parser used for stories not found in the cache.
+   * @param keywords
+   *          keywords used by the delegate.
+   * @param examplesTableFactory
+   *          factory recreating the examples tables of cached stories.
+   * @param directory
+   *          cache directory.
+   */
+  public CachingStoryParser(final StoryParser delegate, final Keywords keywords, final ExamplesTableFactory examplesTableFactory, final File directory) {
+    this.delegate = delegate;
+    this.directory = directory;
+    this.configuration = configuration(delegate, keywords);
+    this.xstream = new XStream();
+    XStream.setupDefaultSecurity(this.xstream);
+    this.xstream.allowTypesByWildcard(new String[] { "org.jbehave.core.model.**" });
+    this.xstream.registerConverter(new ExamplesTableConverter(examplesTableFactory));
+  }
+
+  @Override
+  public Story parseStory(final String storyAsText) {
+    return delegate.parseStory(storyAsText);
+  }
+
+  @Override
+  public Story parseStory(final String storyAsText, final String storyPath) {
+    if (storyPath == null) {
+      return delegate.parseStory(storyAsText, storyPath);
+    }
+    final String hash = hash(configuration + HASH_SEPARATOR + storyPath + HASH_SEPARATOR + storyAsText);
+    Story story = parsed.get(hash);
+    if (story == null) {
+      story = load(hash);
+      if (story == null) {
+        story = delegate.parseStory(storyAsText, storyPath);
+        store(hash, story);
+      }
+      parsed.put(hash, story);
+    }
+    return story;
+  }
+
+  private Story load(final String hash) {
+    final File file = file(hash);
+    if (!file.isFile()) {
+      return null;
+    }
+    try {
+      final Object story = xstream.fromXML(Files.toString(file, Charsets.UTF_8));
+      if (story instanceof Story) {
+        return (Story) story;
+      }
+      warn("Could not read cached story {}: {}", file, "not a story");
+    } catch (final IOException e) {
+      warn("Could not read cached story {}: {}", file, e.getMessage());
+    } catch (final XStreamException e) {
+      warn("Could not read cached story {}: {}", file, e.getMessage());
+    }
+    return null;
+  }
+
+  private void store(final String hash, final Story story) {
+    if (!story.getLifecycle().isEmpty()) {
+      return;
+    }
+    final File file = file(hash);
+    try {
+      Files.createParentDirs(file);
+      final File temporary = new File(file.getPath() + ".tmp" + Thread.currentThread().getId());
+      Files.write(xstream.toXML(story), temporary, Charsets.UTF_8);
+      Files.move(temporary, file);
+    } catch (final IOException e) {
+      warn("Could not cache story {}: {}", story.getPath(), e.getMessage());
+    } catch (final XStreamException e) {
+      warn("Could not cache story {}: {}", story.getPath(), e.getMessage());
+    }
+  }
+
+  /**
+   * Logs the first cache failure as warning and the later ones as debug.
+   */
+  private void warn(final String message, final Object subject, final String reason) {
+    if (warned.compareAndSet(false, true)) {
+      LOG.warn(message, subject, reason);
+    } else {
+      LOG.debug(message, subject, reason);
+    }
+  }
+
+  private File file(final String hash) {
+    return new File(directory, hash + ".xml");
+  }
+
+  /**
+   * Describes the parser configuration affecting the parsed stories.
+   */
+  private static String configuration(final StoryParser delegate, final Keywords keywords) {
+    final StringBuilder configuration = new StringBuilder(delegate.getClass().getName());
+    if (keywords instanceof LocalizedKeywords) {
+      configuration.append(HASH_SEPARATOR).append(((LocalizedKeywords) keywords).getLocale());
+    }
+    for (final String keyword : new String[] { keywords.meta(), keywords.metaProperty(), keywords.narrative(), keywords.inOrderTo(),
+        keywords.asA(), keywords.iWantTo(), keywords.soThat(), keywords.scenario(), keywords.givenStories(), keywords.lifecycle(),
+        keywords.before(), keywords.after(), keywords.examplesTable(), keywords.examplesTableHeaderSeparator(),
+        keywords.examplesTableValueSeparator(), keywords.examplesTableIgnorableSeparator(), keywords.given(), keywords.when(),
+        keywords.then(), keywords.and(), keywords.ignorable() }) {
+      configuration.append(HASH_SEPARATOR).append(keyword);
+    }
+    return configuration.toString();
+  }
+
+  /**
+   * Computes the hash of the text and the JBehave version, so cached stories
+   * of another JBehave version are not used.
+   */
+  static String hash(final String text) {
+    try {
+      final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      digest.update(String.valueOf(Story.class.getPackage().getImplementationVersion()).getBytes(Charsets.UTF_8));
+      digest.update(text.getBytes(Charsets.UTF_8));
+      return new BigInteger(1, digest.digest()).toString(16);
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-1 is not supported", e);
+    }
+  }
+
+  /**
+   * Stores examples tables as text.
+   */
+  private static class ExamplesTableConverter implements Converter {
+
+    private final ExamplesTableFactory factory;
+
+    ExamplesTableConverter(final ExamplesTableFactory factory) {
+      this.factory = factory;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public boolean canConvert(final Class type) {
+      return ExamplesTable.class.equals(type);
+    }
+
+    @Override
+    public void marshal(final Object source, final HierarchicalStreamWriter writer, final MarshallingContext context) {
+      writer.setValue(((ExamplesTable) source).asString());
+    }
+
+    @Override
+    public Object unmarshal(final HierarchicalStreamReader reader, final UnmarshallingContext context) {
+      return factory.createExamplesTable(reader.getValue());
+    }
+  }
+}
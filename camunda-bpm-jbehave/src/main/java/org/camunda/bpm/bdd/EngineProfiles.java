@@ -0,0 +1,30 @@
+package org.camunda.bpm.bdd;
+
+import org.camunda.bpm.test.ProcessEngineProfile;
+
+/**
+ * Resolution of {@link UsingEngineProfile} annotations.
+ */
+final class EngineProfiles {
+
+  private EngineProfiles() {
+    // no instances
+  }
+
+  /**
+   * Resolves the profile from the first annotated class.
+   * 
+   * @param types
+   *          test class and step classes.
+   * @return profile or null, if none of the classes is annotated.
+   */
+  static ProcessEngineProfile resolve(final Class<?>... types) {
+    for (final Class<?> type : types) {
+      final UsingEngineProfile annotation = type.getAnnotation(UsingEngineProfile.class);
+      if (annotation != null) {
+        return annotation.value();
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,204 @@
+package org.camunda.bpm.bdd;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+import org.jbehave.core.steps.StepCandidate;
+import org.jbehave.core.steps.StepFinder.PrioritisingStrategy;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
+
+/**
+ * Strategy limiting the step candidates tried for a story line. <br />
+ * Step patterns are indexed in a trie by the literal words preceding their
+ * first parameter. For a story line only the candidates whose literal words
+ * prefix the line (and the candidates starting with a parameter) are returned,
+ * ordered by priority and, for equal priorities, by declaration, so JBehave
+ * runs the regular expression matching on a few candidates instead of all of
+ * them. If no candidate is found, all candidates are returned and JBehave
+ * falls back to linear matching. <br />
+ * The index is built once per candidate list and shared by candidate lists of
+ * the same step classes. The candidates resolved for a line are cached as
+ * positions in the list, across scenarios and stories.
+ *
+ * @author Simon Zambrovski, Holisticon AG
+ */
+public class IndexedPrioritisingStrategy implements PrioritisingStrategy {
+
+  private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+  private static final String PARAMETER_PREFIX = "$";
+
+  private final ConcurrentMap<List<StepCandidate>, Index> byList = new MapMaker().weakKeys().makeMap();
+  private final ConcurrentMap<List<Object>, Index> byShape = Maps.newConcurrentMap();
+
+  @Override
+  public List<StepCandidate> prioritise(final String stepAsString, final List<StepCandidate> candidates) {
+    Index index = byList.get(candidates);
+    if (index == null) {
+      final List<Object> shape = shape(candidates);
+      index = byShape.get(shape);
+      if (index == null || !index.isValidFor(candidates)) {
+        index = new Index(candidates);
+        byShape.put(shape, index);
+      }
+      byList.put(candidates, index);
+    }
+
+    final int[] positions = index.resolve(stepAsString);
+    final List<StepCandidate> prioritised = Lists.newArrayListWithCapacity(positions.length);
+    for (final int position : positions) {
+      final StepCandidate candidate = candidates.get(position);
+      if (!index.matches(position, candidate)) {
+        // candidate list of the same shape in a different order
+        final Index rebuilt = new Index(candidates);
+        byShape.put(shape(candidates), rebuilt);
+        byList.put(candidates, rebuilt);
+        return prioritise(stepAsString, candidates);
+      }
+      prioritised.add(candidate);
+    }
+    return prioritised;
+  }
+
+  /**
+   * Derives the key of candidate lists sharing an index: the declaring classes
+   * of the step methods in list order and the number of candidates.
+   */
+  private static List<Object> shape(final List<StepCandidate> candidates) {
+    final List<Object> shape = Lists.newArrayList();
+    shape.add(candidates.size());
+    Class<?> last = null;
+    for (final StepCandidate candidate : candidates) {
+      final Class<?> type = candidate.getMethod() != null ? candidate.getMethod().getDeclaringClass() : null;
+      if (type != last || shape.size() == 1) {
+        shape.add(type != null ? type : Void.class);
+        last = type;
+      }
+    }
+    return ImmutableList.copyOf(shape);
+  }
+
+  private static String[] literalPrefix(final String pattern) {
+    final List<String> prefix = Lists.newArrayList();
+    for (final String word : WHITESPACE.split(pattern.trim())) {
+      if (word.contains(PARAMETER_PREFIX)) {
+        break;
+      }
+      prefix.add(word);
+    }
+    return prefix.toArray(new String[prefix.size()]);
+  }
+
+  /**
+   * Trie of one candidate list and the positions resolved per story line.
+   */
+  private static class Index {
+
+    private final Method[] methods;
+    private final String[] patterns;
+    private final Node root = new Node();
+    private final int[] all;
+    private final ConcurrentMap<String, int[]> resolved = Maps.newConcurrentMap();
+    private final Comparator<Integer> byPriority;
+
+    Index(final List<StepCandidate> candidates) {
+      final int size = candidates.size();
+      this.methods = new Method[size];
+      this.patterns = new String[size];
+      final int[] priorities = new int[size];
+      for (int i = 0; i < size; i++) {
+        final StepCandidate candidate = candidates.get(i);
+        methods[i] = candidate.getMethod();
+        patterns[i] = candidate.getPatternAsString();
+        priorities[i] = candidate.getPriority();
+        root.add(literalPrefix(patterns[i]), 0, i);
+      }
+      // stable by position for equal priorities
+      this.byPriority = new Comparator<Integer>() {
+        @Override
+        public int compare(final Integer first, final Integer second) {
+          if (priorities[first] != priorities[second]) {
+            return priorities[first] > priorities[second] ? -1 : 1;
+          }
+          return first.compareTo(second);
+        }
+      };
+      final List<Integer> positions = Lists.newArrayListWithCapacity(size);
+      for (int i = 0; i < size; i++) {
+        positions.add(i);
+      }
+      this.all = sorted(positions);
+    }
+
+    boolean isValidFor(final List<StepCandidate> candidates) {
+      return candidates.size() == methods.length;
+    }
+
+    boolean matches(final int position, final StepCandidate candidate) {
+      return Objects.equal(methods[position], candidate.getMethod()) && Objects.equal(patterns[position], candidate.getPatternAsString());
+    }
+
+    int[] resolve(final String stepAsString) {
+      int[] positions = resolved.get(stepAsString);
+      if (positions == null) {
+        final List<Integer> found = Lists.newArrayList();
+        final String[] words = WHITESPACE.split(stepAsString.trim());
+        // the first word is the keyword (Given, When, Then, And, ...)
+        root.collect(words, 1, found);
+        positions = found.isEmpty() ? all : sorted(found);
+        resolved.put(stepAsString, positions);
+      }
+      return positions;
+    }
+
+    private int[] sorted(final List<Integer> positions) {
+      Collections.sort(positions, byPriority);
+      final int[] result = new int[positions.size()];
+      for (int i = 0; i < result.length; i++) {
+        result[i] = positions.get(i);
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Trie node over the literal words of the step patterns.
+   */
+  private static class Node {
+
+    private final Map<String, Node> children = Maps.newHashMap();
+    private final List<Integer> positions = Lists.newArrayList();
+
+    void add(final String[] words, final int index, final int position) {
+      if (index == words.length) {
+        positions.add(position);
+        return;
+      }
+      Node child = children.get(words[index]);
+      if (child == null) {
+        child = new Node();
+        children.put(words[index], child);
+      }
+      child.add(words, index + 1, position);
+    }
+
+    void collect(final String[] words, final int index, final List<Integer> found) {
+      found.addAll(positions);
+      if (index < words.length) {
+        final Node child = children.get(words[index]);
+        if (child != null) {
+          child.collect(words, index + 1, found);
+        }
+      }
+    }
+  }
+}
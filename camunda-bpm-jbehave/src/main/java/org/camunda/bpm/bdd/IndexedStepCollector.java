@@ -0,0 +1,19 @@
+package org.camunda.bpm.bdd;
+
+import org.jbehave.core.steps.MarkUnmatchedStepsAsPending;
+
+/**
+ * Step collector matching story lines against the step candidates selected by
+ * the {@link IndexedStepFinder}.
+ *
+ * @author Simon Zambrovski, Holisticon AG
+ */
+public class IndexedStepCollector extends MarkUnmatchedStepsAsPending {
+
+  /**
+   * Creates the step collector.
+   */
+  public IndexedStepCollector() {
+    super(new IndexedStepFinder());
+  }
+}
@@ -0,0 +1,18 @@
+package org.camunda.bpm.bdd;
+
+import org.jbehave.core.steps.StepFinder;
+
+/**
+ * Step finder using the {@link IndexedPrioritisingStrategy}.
+ *
+ * @author Simon Zambrovski, Holisticon AG
+ */
+public class IndexedStepFinder extends StepFinder {
+
+  /**
+   * Creates the step finder.
+   */
+  public IndexedStepFinder() {
+    super(new IndexedPrioritisingStrategy());
+  }
+}
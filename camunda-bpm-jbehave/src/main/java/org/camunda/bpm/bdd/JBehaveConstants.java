@@ -10,5 +10,29 @@ public enum JBehaveConstants {
   public static final String NO_EXCLUDE = "";
   public static final String STORY_PATTERN = "**/*.story";
   public static final String DEFAULT_STORY_LOCATION = "src/test/resources";
+  /**
+   * Directory of the parsed story cache.
+   */
+  public static final String STORY_CACHE_DIRECTORY = "target/story-cache";
+  /**
+   * File with the fingerprints of the story dependencies of the last
+   * successful run.
+   */
+  public static final String STORY_IMPACT_FILE = "target/story-impact.properties";
+  /**
+   * System property selecting only the stories affected by changes since the
+   * last successful run. Only runs with the property set record the run in
+   * {@link #STORY_IMPACT_FILE}.
+   */
+  public static final String CHANGED_ONLY_PROPERTY = "camunda.bpm.jbehave.changedOnly";
+  /**
+   * System property with the number of threads running stories in parallel.
+   */
+  public static final String THREADS_PROPERTY = "camunda.bpm.jbehave.threads";
+  /**
+   * System property enabling (default) or disabling the background warm-up of
+   * the process engine on test creation.
+   */
+  public static final String WARM_UP_PROPERTY = "camunda.bpm.jbehave.warmUp";
 
 }
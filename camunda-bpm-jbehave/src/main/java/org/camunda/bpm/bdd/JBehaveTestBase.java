@@ -5,13 +5,17 @@ import static org.jbehave.core.reporters.Format.CONSOLE;
 import static org.jbehave.core.reporters.Format.HTML;
 import static org.jbehave.core.reporters.Format.XML;
 
+import java.io.File;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
 
+import org.camunda.bpm.test.ProcessEngineProfile;
 import org.jbehave.core.InjectableEmbedder;
 import org.jbehave.core.annotations.Configure;
 import org.jbehave.core.annotations.UsingEmbedder;
+import org.jbehave.core.annotations.UsingSteps;
 import org.jbehave.core.embedder.Embedder;
 import org.jbehave.core.failures.FailingUponPendingStep;
 import org.jbehave.core.io.StoryFinder;
@@ -22,6 +26,8 @@ import org.jbehave.core.steps.PrintStreamStepMonitor;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import com.google.common.collect.Lists;
+
 /**
  * Base class for JBehave tests.
  * 
@@ -29,7 +35,7 @@ import org.junit.runner.RunWith;
  */
 @RunWith(NeedleAnnotatedEmbedderRunner.class)
 @UsingEmbedder(embedder = Embedder.class, generateViewAfterStories = true, ignoreFailureInStories = false, ignoreFailureInView = false, verboseFailures = true)
-@Configure(stepMonitor = PrintStreamStepMonitor.class, pendingStepStrategy = FailingUponPendingStep.class, stepdocReporter = PrintStreamStepdocReporter.class, storyReporterBuilder = JBehaveTestBase.RichReporterBuilder.class)
+@Configure(stepMonitor = PrintStreamStepMonitor.class, pendingStepStrategy = FailingUponPendingStep.class, stepdocReporter = PrintStreamStepdocReporter.class, stepFinder = IndexedStepFinder.class, stepCollector = IndexedStepCollector.class, storyParser = CachingStoryParser.class, storyReporterBuilder = JBehaveTestBase.RichReporterBuilder.class)
 public abstract class JBehaveTestBase extends InjectableEmbedder {
 
   private static final boolean REPORT_FAILURE_TRACE = false;
@@ -38,6 +44,8 @@ public abstract class JBehaveTestBase extends InjectableEmbedder {
     Slf4jLoggerRule.DEFAULT.before();
   }
 
+  private StoryImpactIndex storyImpactIndex;
+
   /**
    * Retrieves the location of the stories. <br>
    * This method is intended to be overwritten on divergent location for stories
@@ -50,16 +58,111 @@ public abstract class JBehaveTestBase extends InjectableEmbedder {
   }
 
   /**
-   * Retrieves the location of the stories.
+   * Retrieves the location of the stories. If the system property
+   * {@link JBehaveConstants#CHANGED_ONLY_PROPERTY} is set, only the stories
+   * affected by changes since the last successful run are returned.
    */
   protected List<String> storyPaths() {
+    return changedOnly() ? getStoryImpactIndex().changedStories() : findStoryPaths();
+  }
+
+  /**
+   * Checks if only changed stories should run.
+   * 
+   * @return true, if the changed-only mode is enabled.
+   */
+  protected boolean changedOnly() {
+    return Boolean.getBoolean(JBehaveConstants.CHANGED_ONLY_PROPERTY);
+  }
+
+  /**
+   * Retrieves the index from all stories to their dependencies.
+   * 
+   * @return story impact index.
+   */
+  protected StoryImpactIndex getStoryImpactIndex() {
+    if (storyImpactIndex == null) {
+      storyImpactIndex = new StoryImpactIndex(getStoryLocation(), findStoryPaths(), stepClasses(), new File(JBehaveConstants.STORY_IMPACT_FILE));
+    }
+    return storyImpactIndex;
+  }
+
+  private List<String> findStoryPaths() {
     return new StoryFinder().findPaths(getStoryLocation(), "**/*.story", "");
   }
 
+  private Class<?>[] stepClasses() {
+    final UsingSteps usingSteps = getClass().getAnnotation(UsingSteps.class);
+    return usingSteps != null ? usingSteps.instances() : new Class<?>[0];
+  }
+
+  /**
+   * Retrieves the number of threads running stories in parallel. <br />
+   * Defaults to the value of the system property
+   * {@link JBehaveConstants#THREADS_PROPERTY} or to the embedder configuration.
+   * Every story thread works on its own process engine.
+   * 
+   * @param embedder
+   *          configured embedder.
+   * @return number of threads.
+   */
+  protected int threads(final Embedder embedder) {
+    return Integer.getInteger(JBehaveConstants.THREADS_PROPERTY, embedder.embedderControls().threads());
+  }
+
+  /**
+   * Selects the engine profile declared by {@link UsingEngineProfile} on the
+   * test class or on one of the step classes. The selection is global for the
+   * JVM, {@link #run()} restores the previous one afterwards.
+   */
+  protected void selectEngineProfile() {
+    final ProcessEngineProfile profile = engineProfile();
+    if (profile != null) {
+      ProcessEngineProfile.select(profile);
+    }
+  }
+
+  /**
+   * Retrieves the engine profile declared by {@link UsingEngineProfile} on the
+   * test class or on one of the step classes.
+   * 
+   * @return profile or null, if not declared.
+   */
+  protected ProcessEngineProfile engineProfile() {
+    final List<Class<?>> types = Lists.<Class<?>> newArrayList(getClass());
+    types.addAll(Arrays.asList(stepClasses()));
+    return EngineProfiles.resolve(types.toArray(new Class<?>[types.size()]));
+  }
+
+  /**
+   * Starts building the process engine of the test in the background, while
+   * stories are parsed. Called by {@link #run()}. Disabled by the system property
+   * {@link JBehaveConstants#WARM_UP_PROPERTY}.
+   */
+  protected void warmUp() {
+    if (Boolean.parseBoolean(System.getProperty(JBehaveConstants.WARM_UP_PROPERTY, "true"))) {
+      final ProcessEngineProfile profile = engineProfile();
+      (profile != null ? profile : ProcessEngineProfile.selected()).warmUp();
+    }
+  }
+
   @Override
   @Test
   public void run() {
-    injectedEmbedder().runStoriesAsPaths(storyPaths());
+    final ProcessEngineProfile previous = ProcessEngineProfile.selected();
+    selectEngineProfile();
+    try {
+      warmUp();
+      final Embedder embedder = injectedEmbedder();
+      embedder.embedderControls().useThreads(threads(embedder));
+      embedder.runStoriesAsPaths(storyPaths());
+      if (changedOnly()) {
+        getStoryImpactIndex().recordSuccessfulRun();
+      }
+    } finally {
+      // do not leak the profile into test classes run later in this JVM
+      ProcessEngineProfile.select(previous);
+    }
   }
 
   /**
@@ -72,7 +175,7 @@ public abstract class JBehaveTestBase extends InjectableEmbedder {
      */
     public RichReporterBuilder() {
       withDefaultFormats().withViewResources(getViewResources()).withFormats(CONSOLE, HTML, XML).withFailureTrace(REPORT_FAILURE_TRACE)
-          .withFailureTraceCompression(COMPRESS_FAILURE_TRACE);
+          .withFailureTraceCompression(COMPRESS_FAILURE_TRACE).withReporters(new PerformanceReporter(this));
     }
 
     /**
@@ -3,11 +3,13 @@ package org.camunda.bpm.bdd;
 import static org.jbehave.core.io.CodeLocations.codeLocationFromPath;
 import static org.needle4j.injection.InjectionProviders.providersToSet;
 
+import java.io.File;
 import java.net.URL;
 import java.util.List;
 import java.util.Set;
 
 import org.camunda.bpm.test.CamundaSupport;
+import org.camunda.bpm.test.ProcessEngineProfile;
 import org.jbehave.core.configuration.Configuration;
 import org.jbehave.core.configuration.MostUsefulConfiguration;
 import org.jbehave.core.failures.FailingUponPendingStep;
@@ -19,6 +21,7 @@ import org.jbehave.core.reporters.PrintStreamStepdocReporter;
 import org.jbehave.core.steps.InjectableStepsFactory;
 import org.jbehave.core.steps.PrintStreamStepMonitor;
 import org.jbehave.core.steps.needle.NeedleStepsFactory;
+import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.needle4j.injection.InjectionProvider;
 
@@ -34,6 +37,33 @@ public abstract class JUnitTestBase extends JUnitStories {
     Slf4jLoggerRule.DEFAULT.before();
   }
 
+  private CamundaSupport camundaSupport;
+  private StoryImpactIndex storyImpactIndex;
+
+  /**
+   * Starts building the process engine of the test in the background, while
+   * stories are parsed. Called by {@link #run()}. Disabled by the system property
+   * {@link JBehaveConstants#WARM_UP_PROPERTY}.
+   */
+  protected void warmUp() {
+    if (Boolean.parseBoolean(System.getProperty(JBehaveConstants.WARM_UP_PROPERTY, "true"))) {
+      final ProcessEngineProfile profile = engineProfile();
+      (profile != null ? profile : ProcessEngineProfile.selected()).warmUp();
+    }
+  }
+
+  /**
+   * Retrieves the number of threads running stories in parallel. <br />
+   * Defaults to the value of the system property
+   * {@link JBehaveConstants#THREADS_PROPERTY}. Every story thread works on its
+   * own process engine.
+   * 
+   * @return number of threads.
+   */
+  protected int threads() {
+    return Integer.getInteger(JBehaveConstants.THREADS_PROPERTY, 1);
+  }
+
   @Override
   public Configuration configuration() {
 
@@ -42,6 +72,9 @@ public abstract class JUnitTestBase extends JUnitStories {
     configuration.useStepMonitor(new PrintStreamStepMonitor());
     configuration.usePendingStepStrategy(new FailingUponPendingStep());
     configuration.useStepdocReporter(new PrintStreamStepdocReporter());
+    configuration.useStepFinder(new IndexedStepFinder());
+    configuration.useStepCollector(new IndexedStepCollector());
+    configuration.useStoryParser(new CachingStoryParser(configuration.keywords(), configuration.examplesTableFactory()));
 
     return configuration;
   }
@@ -55,8 +88,54 @@ public abstract class JUnitTestBase extends JUnitStories {
     return new NeedleStepsFactory(configuration(), getInjectionProviders(), getStepClasses());
   }
 
+  /**
+   * Retrieves the paths of the stories to run. If the system property
+   * {@link JBehaveConstants#CHANGED_ONLY_PROPERTY} is set, only the stories
+   * affected by changes since the last successful run are returned.
+   */
   @Override
   public List<String> storyPaths() {
+    return changedOnly() ? getStoryImpactIndex().changedStories() : findStoryPaths();
+  }
+
+  /**
+   * Starts the warm-up of the process engine, configures the number of story
+   * threads and runs the stories. In the changed-only mode, the run is
+   * recorded for the change-impact selection.
+   */
+  @Override
+  @Test
+  public void run() throws Throwable {
+    warmUp();
+    configuredEmbedder().embedderControls().useThreads(threads());
+    super.run();
+    if (changedOnly()) {
+      getStoryImpactIndex().recordSuccessfulRun();
+    }
+  }
+
+  /**
+   * Checks if only changed stories should run.
+   * 
+   * @return true, if the changed-only mode is enabled.
+   */
+  protected boolean changedOnly() {
+    return Boolean.getBoolean(JBehaveConstants.CHANGED_ONLY_PROPERTY);
+  }
+
+  /**
+   * Retrieves the index from all stories to their dependencies.
+   * 
+   * @return story impact index.
+   */
+  protected StoryImpactIndex getStoryImpactIndex() {
+    if (storyImpactIndex == null) {
+      storyImpactIndex = new StoryImpactIndex(getStoryLocation(), findStoryPaths(), getStepClasses(), new File(JBehaveConstants.STORY_IMPACT_FILE));
+    }
+    return storyImpactIndex;
+  }
+
+  private List<String> findStoryPaths() {
     return new StoryFinder().findPaths(getStoryLocation(), JBehaveConstants.STORY_PATTERN, JBehaveConstants.NO_EXCLUDE);
   }
 
@@ -68,7 +147,32 @@ public abstract class JUnitTestBase extends JUnitStories {
    * @return list of injection providers, including the one for Camunda support.
    */
   public Set<InjectionProvider<?>> getInjectionProviders() {
-    return providersToSet(new CamundaSupport());
+    return providersToSet(getCamundaSupport());
+  }
+
+  /**
+   * Retrieves the Camunda support shared by all steps of this test. The
+   * support borrows its process engine from the {@link org.camunda.bpm.test.ProcessEnginePool}.
+   * 
+   * @return Camunda support.
+   */
+  protected CamundaSupport getCamundaSupport() {
+    if (camundaSupport == null) {
+      final ProcessEngineProfile profile = engineProfile();
+      camundaSupport = profile != null ? new CamundaSupport(profile) : new CamundaSupport();
+    }
+    return camundaSupport;
+  }
+
+  /**
+   * Retrieves the engine profile declared by {@link UsingEngineProfile} on the
+   * test class or on one of the step classes.
+   * 
+   * @return profile or null, if not declared.
+   */
+  protected ProcessEngineProfile engineProfile() {
+    final ProcessEngineProfile profile = EngineProfiles.resolve(getClass());
+    return profile != null ? profile : EngineProfiles.resolve(getStepClasses());
   }
 
 }
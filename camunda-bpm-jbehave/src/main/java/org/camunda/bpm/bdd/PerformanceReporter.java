@@ -0,0 +1,98 @@
+package org.camunda.bpm.bdd;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import org.jbehave.core.model.Story;
+import org.jbehave.core.reporters.NullStoryReporter;
+import org.jbehave.core.reporters.StoryReporterBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+
+/**
+ * Reporter writing the performance figures published by the steps of a story
+ * into the report directory, as <code>&lt;story&gt;.performance.txt</code>
+ * next to the reports of the story. <br />
+ * Figures are collected per story thread.
+ *
+ * @author Simon Zambrovski, Holisticon AG
+ */
+public class PerformanceReporter extends NullStoryReporter {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PerformanceReporter.class);
+  private static final ThreadLocal<Map<String, String>> FIGURES = new ThreadLocal<Map<String, String>>() {
+    @Override
+    protected Map<String, String> initialValue() {
+      return Maps.newLinkedHashMap();
+    }
+  };
+
+  private final ThreadLocal<String> storyPath = new ThreadLocal<String>();
+  private final StoryReporterBuilder builder;
+
+  /**
+   * Creates the reporter.
+   *
+   * @param builder
+   *          builder providing the report directory.
+   */
+  public PerformanceReporter(final StoryReporterBuilder builder) {
+    this.builder = builder;
+  }
+
+  /**
+   * Publishes a figure of the story running on the current thread.
+   *
+   * @param name
+   *          name of the figure.
+   * @param value
+   *          value.
+   */
+  public static void publish(final String name, final Object value) {
+    FIGURES.get().put(name, String.valueOf(value));
+    LOG.info("{}: {}", name, value);
+  }
+
+  @Override
+  public void beforeStory(final Story story, final boolean givenStory) {
+    if (!givenStory) {
+      storyPath.set(story.getPath());
+    }
+  }
+
+  @Override
+  public void afterStory(final boolean givenStory) {
+    if (givenStory) {
+      return;
+    }
+    final Map<String, String> figures = FIGURES.get();
+    final String path = storyPath.get();
+    try {
+      if (!figures.isEmpty() && path != null) {
+        write(path, figures);
+      }
+    } finally {
+      FIGURES.remove();
+      storyPath.remove();
+    }
+  }
+
+  private void write(final String path, final Map<String, String> figures) {
+    final StringBuilder content = new StringBuilder();
+    for (final Map.Entry<String, String> figure : figures.entrySet()) {
+      content.append(figure.getKey()).append(" = ").append(figure.getValue()).append('\n');
+    }
+    final File file = new File(builder.outputDirectory(), path.replace('/', '.').replace('\\', '.') + ".performance.txt");
+    try {
+      Files.createParentDirs(file);
+      Files.write(content, file, Charsets.UTF_8);
+    } catch (final IOException e) {
+      LOG.warn("Could not write performance report {}", file, e);
+    }
+  }
+}
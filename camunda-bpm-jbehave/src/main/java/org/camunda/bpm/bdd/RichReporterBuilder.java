@@ -21,7 +21,8 @@ public class RichReporterBuilder extends StoryReporterBuilder {
         .withViewResources(getViewResources()) //
         .withFormats(CONSOLE, HTML, XML) //
         .withFailureTrace(JBehaveConstants.REPORT_FAILURE_TRACE) //
-        .withFailureTraceCompression(JBehaveConstants.COMPRESS_FAILURE_TRACE);
+        .withFailureTraceCompression(JBehaveConstants.COMPRESS_FAILURE_TRACE) //
+        .withReporters(new PerformanceReporter(this));
   }
 
   /**
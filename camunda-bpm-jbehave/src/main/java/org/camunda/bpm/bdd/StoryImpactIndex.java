@@ -0,0 +1,363 @@
+package org.camunda.bpm.bdd;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+import com.google.common.io.Resources;
+
+/**
+ * Index from stories to the files they depend on: the story itself, its given
+ * stories (transitively), the process models deployed by
+ * {@code the process definition <resource>} in the story or its given stories,
+ * the step classes and all class files in the class directories of the class
+ * path. <br />
+ * The fingerprints of all files are recorded after a successful run. Stories
+ * with a changed or new dependency since then are selected by
+ * {@link #changedStories()}. A change of any class file in a class directory,
+ * e.g. a delegate, a guard or a super class of a step class, selects all
+ * stories. Classes packaged in jars are covered only, if they are step
+ * classes.
+ *
+ * @author Simon Zambrovski, Holisticon AG
+ */
+public class StoryImpactIndex {
+
+  private static final Logger LOG = LoggerFactory.getLogger(StoryImpactIndex.class);
+  private static final Pattern PROCESS_DEFINITION = Pattern.compile("the process definition\\s+(\\S+)");
+  private static final String GIVEN_STORIES = "GivenStories:";
+  private static final String STORY = "story:";
+  private static final String RESOURCE = "resource:";
+  private static final String CLASS = "class:";
+  private static final String CLASSES = "classes:";
+  private static final String CLASS_DIRECTORIES = "directories";
+  private static final String CLASS_FILE = ".class";
+  private static final String STORY_FILE = ".story";
+  private static final String MISSING = "missing";
+
+  private final URL storyLocation;
+  private final List<String> storyPaths;
+  private final File stateFile;
+  private final Map<String, Set<String>> dependencies = Maps.newLinkedHashMap();
+  private final Map<String, String> fingerprints = Maps.newHashMap();
+  private final Map<String, Set<String>> directDependencies = Maps.newHashMap();
+
+  /**
+   * Builds the index.
+   *
+   * @param storyLocation
+   *          location the story paths are relative to.
+   * @param storyPaths
+   *          paths of all stories.
+   * @param stepClasses
+   *          step classes used by all stories.
+   * @param stateFile
+   *          file keeping the fingerprints of the last successful run.
+   */
+  public StoryImpactIndex(final URL storyLocation, final List<String> storyPaths, final Class<?>[] stepClasses, final File stateFile) {
+    this.storyLocation = storyLocation;
+    this.storyPaths = ImmutableList.copyOf(storyPaths);
+    this.stateFile = stateFile;
+    for (final String storyPath : storyPaths) {
+      final Set<String> storyDependencies = Sets.newLinkedHashSet();
+      collect(storyPath, storyDependencies);
+      for (final Class<?> stepClass : stepClasses) {
+        storyDependencies.add(CLASS + stepClass.getName());
+      }
+      storyDependencies.add(CLASSES + CLASS_DIRECTORIES);
+      dependencies.put(storyPath, storyDependencies);
+    }
+  }
+
+  /**
+   * Collects the story, its models and its given stories with their
+   * dependencies.
+   */
+  private void collect(final String storyPath, final Set<String> storyDependencies) {
+    if (!storyDependencies.add(STORY + storyPath)) {
+      // already collected, given stories may form cycles
+      return;
+    }
+    for (final String dependency : directDependencies(storyPath)) {
+      if (dependency.startsWith(STORY)) {
+        collect(dependency.substring(STORY.length()), storyDependencies);
+      } else {
+        storyDependencies.add(dependency);
+      }
+    }
+  }
+
+  private Set<String> directDependencies(final String storyPath) {
+    Set<String> direct = directDependencies.get(storyPath);
+    if (direct == null) {
+      direct = Sets.newLinkedHashSet();
+      final String text = read(storyURL(storyPath));
+      if (text != null) {
+        final Matcher matcher = PROCESS_DEFINITION.matcher(text);
+        while (matcher.find()) {
+          direct.add(RESOURCE + matcher.group(1));
+        }
+        for (final String givenStory : givenStories(text)) {
+          direct.add(STORY + givenStory);
+        }
+      }
+      directDependencies.put(storyPath, direct);
+    }
+    return direct;
+  }
+
+  /**
+   * Retrieves the dependencies of a story.
+   *
+   * @param storyPath
+   *          story path.
+   * @return dependencies, prefixed by <code>story:</code>,
+   *         <code>resource:</code>, <code>class:</code> or
+   *         <code>classes:</code>.
+   */
+  public Set<String> getDependencies(final String storyPath) {
+    final Set<String> storyDependencies = dependencies.get(storyPath);
+    return storyDependencies != null ? ImmutableSet.copyOf(storyDependencies) : ImmutableSet.<String> of();
+  }
+
+  /**
+   * Selects the stories with a dependency changed since the last successful
+   * run. All stories are selected, if no run has been recorded.
+   *
+   * @return story paths.
+   */
+  public List<String> changedStories() {
+    final Properties state = loadState();
+    final List<String> changed = Lists.newArrayList();
+    for (final Map.Entry<String, Set<String>> story : dependencies.entrySet()) {
+      for (final String dependency : story.getValue()) {
+        if (!fingerprint(dependency).equals(state.getProperty(dependency))) {
+          changed.add(story.getKey());
+          break;
+        }
+      }
+    }
+    LOG.info("{} of {} stories affected by changes since the last successful run.", changed.size(), storyPaths.size());
+    return changed;
+  }
+
+  /**
+   * Records the fingerprints of the dependencies of all indexed stories.
+   */
+  public void recordSuccessfulRun() {
+    final Properties state = loadState();
+    for (final Set<String> storyDependencies : dependencies.values()) {
+      for (final String dependency : storyDependencies) {
+        state.setProperty(dependency, fingerprint(dependency));
+      }
+    }
+    try {
+      Files.createParentDirs(stateFile);
+      final OutputStream out = new FileOutputStream(stateFile);
+      try {
+        state.store(out, "Fingerprints of the last successful story run");
+      } finally {
+        out.close();
+      }
+    } catch (final IOException e) {
+      LOG.warn("Could not record story run in {}", stateFile, e);
+    }
+  }
+
+  private Properties loadState() {
+    final Properties state = new Properties();
+    if (stateFile.isFile()) {
+      try {
+        final InputStream in = new FileInputStream(stateFile);
+        try {
+          state.load(in);
+        } finally {
+          in.close();
+        }
+      } catch (final IOException e) {
+        LOG.warn("Could not read {}, selecting all stories.", stateFile, e);
+        state.clear();
+      }
+    }
+    return state;
+  }
+
+  private String fingerprint(final String dependency) {
+    String fingerprint = fingerprints.get(dependency);
+    if (fingerprint == null) {
+      if (dependency.startsWith(STORY)) {
+        fingerprint = hash(storyURL(dependency.substring(STORY.length())));
+      } else if (dependency.startsWith(RESOURCE)) {
+        fingerprint = hash(classpathURL(dependency.substring(RESOURCE.length())));
+      } else if (dependency.startsWith(CLASSES)) {
+        fingerprint = hashClassDirectories();
+      } else {
+        fingerprint = hash(classpathURL(dependency.substring(CLASS.length()).replace('.', '/') + CLASS_FILE));
+      }
+      fingerprints.put(dependency, fingerprint);
+    }
+    return fingerprint;
+  }
+
+  private URL storyURL(final String storyPath) {
+    final URL url = classpathURL(storyPath);
+    if (url != null) {
+      return url;
+    }
+    try {
+      return new URL(storyLocation, storyPath);
+    } catch (final MalformedURLException e) {
+      return null;
+    }
+  }
+
+  private static URL classpathURL(final String resource) {
+    return Thread.currentThread().getContextClassLoader().getResource(resource);
+  }
+
+  /**
+   * Parses the given stories, including continuation lines listing further
+   * stories.
+   */
+  static List<String> givenStories(final String text) {
+    final List<String> givenStories = Lists.newArrayList();
+    boolean inGivenStories = false;
+    for (final String line : Splitter.on('\n').trimResults().split(text)) {
+      final String entries;
+      if (line.startsWith(GIVEN_STORIES)) {
+        entries = line.substring(GIVEN_STORIES.length());
+      } else if (inGivenStories && isStoryList(line)) {
+        entries = line;
+      } else {
+        inGivenStories = false;
+        continue;
+      }
+      inGivenStories = true;
+      for (final String givenStory : Splitter.on(',').trimResults().omitEmptyStrings().split(entries)) {
+        givenStories.add(withoutAnchor(givenStory));
+      }
+    }
+    return givenStories;
+  }
+
+  private static boolean isStoryList(final String line) {
+    if (line.isEmpty()) {
+      return false;
+    }
+    for (final String entry : Splitter.on(',').trimResults().omitEmptyStrings().split(line)) {
+      if (!withoutAnchor(entry).endsWith(STORY_FILE)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Strips the parameter reference, e.g. path/to/given.story#{id:one}.
+   */
+  private static String withoutAnchor(final String givenStory) {
+    final int anchor = givenStory.indexOf('#');
+    return anchor >= 0 ? givenStory.substring(0, anchor) : givenStory;
+  }
+
+  /**
+   * Hashes the names and contents of all class files in the class directories
+   * of the class path.
+   */
+  private static String hashClassDirectories() {
+    try {
+      final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      final Enumeration<URL> roots = Thread.currentThread().getContextClassLoader().getResources("");
+      final List<File> directories = Lists.newArrayList();
+      while (roots.hasMoreElements()) {
+        final URL root = roots.nextElement();
+        if ("file".equals(root.getProtocol())) {
+          directories.add(new File(root.toURI()));
+        }
+      }
+      Collections.sort(directories);
+      for (final File directory : directories) {
+        hashClassFiles(directory, "", digest);
+      }
+      return new BigInteger(1, digest.digest()).toString(16);
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-1 is not supported", e);
+    } catch (final IOException e) {
+      return MISSING;
+    } catch (final URISyntaxException e) {
+      return MISSING;
+    }
+  }
+
+  private static void hashClassFiles(final File directory, final String prefix, final MessageDigest digest) throws IOException {
+    final File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+    Arrays.sort(files);
+    for (final File file : files) {
+      if (file.isDirectory()) {
+        hashClassFiles(file, prefix + file.getName() + "/", digest);
+      } else if (file.getName().endsWith(CLASS_FILE)) {
+        digest.update((prefix + file.getName()).getBytes(Charsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(Files.toByteArray(file));
+      }
+    }
+  }
+
+  private static String read(final URL url) {
+    if (url == null) {
+      return null;
+    }
+    try {
+      return Resources.toString(url, Charsets.UTF_8);
+    } catch (final IOException e) {
+      return null;
+    }
+  }
+
+  private static String hash(final URL url) {
+    if (url == null) {
+      return MISSING;
+    }
+    try {
+      final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      digest.update(Resources.toByteArray(url));
+      return new BigInteger(1, digest.digest()).toString(16);
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-1 is not supported", e);
+    } catch (final IOException e) {
+      return MISSING;
+    }
+  }
+}
@@ -0,0 +1,32 @@
+package org.camunda.bpm.bdd;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import org.camunda.bpm.test.ProcessEngineProfile;
+
+/**
+ * Selects the engine profile for the stories. <br />
+ * May be put on subclasses of {@link JBehaveTestBase} and
+ * {@link JUnitTestBase} or on the step classes used by them. A single story
+ * may select a profile by the meta property
+ * {@link ProcessEngineProfile#META_PROPERTY}, e.g.
+ * {@code Meta: @engineProfile lean}.
+ *
+ * @author Simon Zambrovski, Holisticon AG
+ */
+@Documented
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface UsingEngineProfile {
+
+  /**
+   * Profile to use.
+   */
+  ProcessEngineProfile value();
+}
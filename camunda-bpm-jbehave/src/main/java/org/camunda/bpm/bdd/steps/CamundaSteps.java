@@ -1,20 +1,37 @@
 package org.camunda.bpm.bdd.steps;
 
 import static org.camunda.bpm.engine.test.assertions.ProcessEngineAssertions.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 
+import org.camunda.bpm.engine.runtime.ProcessInstance;
 import org.camunda.bpm.engine.test.assertions.ProcessEngineAssertions;
-import org.camunda.bpm.engine.test.mock.Mocks;
 import org.camunda.bpm.test.CamundaSupport;
+import org.camunda.bpm.test.JobDrain;
+import org.camunda.bpm.test.ProcessEngineProfile;
+import org.camunda.bpm.test.RowResult;
 import org.jbehave.core.annotations.AfterStory;
 import org.jbehave.core.annotations.BeforeStory;
 import org.jbehave.core.annotations.Given;
+import org.jbehave.core.annotations.Named;
 import org.jbehave.core.annotations.Then;
 import org.jbehave.core.annotations.When;
+import org.jbehave.core.model.ExamplesTable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Function;
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
 /**
  * Generic Steps to control Camunda BPM from the test.
  * 
@@ -27,9 +44,20 @@ public class CamundaSteps {
   @Inject
   private CamundaSupport support;
 
+  /**
+   * Initializes the engine for the story.
+   * 
+   * @param engineProfile
+   *          name of the engine profile selected by the story meta, may be
+   *          empty.
+   */
   @BeforeStory
-  public void init() {
+  public void init(@Named(ProcessEngineProfile.META_PROPERTY) final String engineProfile) {
     LOG.debug("Initializing before a story run.");
+    final ProcessEngineProfile profile = ProcessEngineProfile.parse(engineProfile);
+    if (profile != null) {
+      support.useProfile(profile);
+    }
     ProcessEngineAssertions.init(support.getProcessEngine());
   }
 
@@ -39,9 +67,8 @@ public class CamundaSteps {
   @AfterStory(uponGivenStory = false)
   public void cleanUp() {
     LOG.debug("Cleaning up after story run.");
-    Mocks.reset();
-    support.undeploy();
     support.resetClock();
+    support.undeploy();
     ProcessEngineAssertions.reset();
   }
 
@@ -51,23 +78,219 @@ public class CamundaSteps {
     support.deploy(processDefinition);
   }
 
+  /**
+   * Saves the current engine state as fixture for later scenarios.
+   * 
+   * @param fixtureName
+   *          name of the fixture.
+   */
+  @Then("the fixture $fixtureName is saved")
+  @Given("the fixture $fixtureName is saved")
+  public void saveFixture(final String fixtureName) {
+    support.saveFixture(fixtureName);
+  }
+
+  /**
+   * Restores the engine state saved by a previous scenario.
+   * 
+   * @param fixtureName
+   *          name of the fixture.
+   */
+  @Given("the fixture $fixtureName is restored")
+  public void restoreFixture(final String fixtureName) {
+    if (!support.restoreFixture(fixtureName)) {
+      throw new IllegalStateException("Fixture " + fixtureName + " has not been saved for engine " + support.getProcessEngine().getName() + ".");
+    }
+  }
+
   @When("the process $processKey is started")
   public void startProcess(final String processKey) {
     support.startProcessInstanceByKey(processKey);
   }
 
+  @When("$count instances of process $processKey are started")
+  public void startProcesses(final int count, final String processKey) {
+    support.startProcessInstancesByKey(processKey, count);
+  }
+
+  /**
+   * Starts the process and registers the instance under the alias.
+   * 
+   * @param processKey
+   *          process definition key.
+   * @param alias
+   *          alias of the instance.
+   */
+  @When("the process $processKey is started as $alias")
+  public void startProcessAs(final String processKey, final String alias) {
+    support.getProcessInstanceRegistry().alias(alias, support.startProcessInstanceByKey(processKey));
+  }
+
+  /**
+   * Makes the aliased instance the target of the following steps.
+   * 
+   * @param alias
+   *          alias of the instance.
+   */
+  @When("the process instance $alias is selected")
+  @Given("the process instance $alias is selected")
+  public void selectProcess(final String alias) {
+    support.selectProcessInstance(alias);
+  }
+
+  @When("$count instances of process $processKey are started in group $group")
+  public void startProcesses(final int count, final String processKey, final String group) {
+    support.startProcessInstancesByKey(processKey, count, group);
+  }
+
+  @When("$count instances of process $processKey are started in batches of $batchSize")
+  public void startProcesses(final int count, final String processKey, final int batchSize) {
+    support.startProcessInstancesByKey(processKey, Collections.<Map<String, Object>> nCopies(count, null), batchSize);
+  }
+
+  /**
+   * Starts one process instance per table row concurrently, using the row
+   * values as variables. The rows share the deployment of the story, the
+   * failures are reported in row order.
+   * 
+   * @param processKey
+   *          process definition key.
+   * @param rows
+   *          table of variables, one row per instance.
+   */
+  @When("the process $processKey is started for each row of $rows")
+  public void startProcessForRows(final String processKey, final ExamplesTable rows) {
+    final List<RowResult<ProcessInstance>> results = support.runRows(rows.getRows(), new Function<Map<String, String>, ProcessInstance>() {
+      @Override
+      public ProcessInstance apply(final Map<String, String> row) {
+        return support.startProcessInstanceByKey(processKey, Maps.<String, Object> newHashMap(row));
+      }
+    });
+    final List<String> failures = Lists.newArrayList();
+    for (final RowResult<ProcessInstance> result : results) {
+      LOG.debug("{}", result);
+      if (result.isFailed()) {
+        failures.add(result.toString());
+      }
+    }
+    if (!failures.isEmpty()) {
+      throw new AssertionError(failures.size() + " of " + results.size() + " rows failed:\n" + Joiner.on('\n').join(failures));
+    }
+  }
+
+  /**
+   * Completes the open tasks with the definition key of all started instances.
+   * 
+   * @param taskDefinitionKey
+   *          task definition key.
+   */
+  @When("all open tasks $taskDefinitionKey are completed")
+  public void completeTasks(final String taskDefinitionKey) {
+    final int completed = support.completeTasks(taskDefinitionKey, null);
+    LOG.debug("Completed {} tasks {}.", completed, taskDefinitionKey);
+  }
+
+  /**
+   * Completes the open tasks with the definition key of all started instances,
+   * in batches.
+   * 
+   * @param taskDefinitionKey
+   *          task definition key.
+   * @param batchSize
+   *          number of tasks completed in one transaction.
+   */
+  @When("all open tasks $taskDefinitionKey are completed in batches of $batchSize")
+  public void completeTasks(final String taskDefinitionKey, final int batchSize) {
+    final int completed = support.completeTasks(taskDefinitionKey, null, batchSize);
+    LOG.debug("Completed {} tasks {}.", completed, taskDefinitionKey);
+  }
+
+  /**
+   * Executes all pending jobs (async continuations, timers).
+   */
+  @When("all pending jobs are executed")
+  public void executeJobs() {
+    final JobDrain.Result result = support.executeJobs();
+    LOG.debug("{}", result);
+  }
+
   /**
    * Process is finished.
    */
   @Then("the process is finished")
   public void processIsFinished() {
-    assertThat(support.getProcessInstance()).isEnded();
+    // answered from the event trace, the assertion queries only on failure
+    if (!Boolean.TRUE.equals(support.isEnded())) {
+      assertThat(support.getProcessInstance()).isEnded();
+    }
   }
 
   @Then("the process is finished with event $eventName")
   public void processFinishedSucessfully(final String eventName) {
     processIsFinished();
-    assertThat(support.getProcessInstance()).hasPassed(eventName);
+    if (!Boolean.TRUE.equals(support.hasPassed(eventName))) {
+      assertThat(support.getProcessInstance()).hasPassed(eventName);
+    }
+  }
+
+  /**
+   * All started instances are finished.
+   * 
+   * @param count
+   *          expected number of instances.
+   */
+  @Then("all $count instances are finished")
+  public void allProcessesAreFinished(final int count) {
+    final List<ProcessInstance> instances = support.getProcessInstances();
+    assertEquals("Number of started instances", count, instances.size());
+    assertEquals("Number of finished instances", count, support.countFinished(instances));
+  }
+
+  /**
+   * All instances of the group are finished.
+   * 
+   * @param group
+   *          name of the group.
+   */
+  @Then("all instances of group $group are finished")
+  public void allProcessesOfGroupAreFinished(final String group) {
+    final List<ProcessInstance> instances = support.getProcessInstanceRegistry().getGroup(group);
+    assertEquals("Number of finished instances of group " + group, instances.size(), support.countFinished(instances));
+  }
+
+  /**
+   * At least the percentage of started instances passed the activity.
+   * 
+   * @param percent
+   *          minimal percentage.
+   * @param activityId
+   *          activity id.
+   */
+  @Then("$percent% of instances passed $activityId")
+  public void processesPassed(final double percent, final String activityId) {
+    assertPassed(support.getProcessInstances(), percent, activityId);
+  }
+
+  /**
+   * At least the percentage of the instances of the group passed the activity.
+   * 
+   * @param percent
+   *          minimal percentage.
+   * @param group
+   *          name of the group.
+   * @param activityId
+   *          activity id.
+   */
+  @Then("$percent% of instances of group $group passed $activityId")
+  public void processesOfGroupPassed(final double percent, final String group, final String activityId) {
+    assertPassed(support.getProcessInstanceRegistry().getGroup(group), percent, activityId);
+  }
+
+  private void assertPassed(final List<ProcessInstance> instances, final double percent, final String activityId) {
+    final int passed = support.countPassed(instances, activityId);
+    final double actual = instances.isEmpty() ? 0 : passed * 100.0 / instances.size();
+    assertTrue(String.format("Expected %s%% of %d instances to pass %s, but only %d (%.2f%%) did.", percent, instances.size(), activityId, passed,
+        actual), !instances.isEmpty() && actual >= percent);
   }
 
   /**
@@ -82,4 +305,45 @@ public class CamundaSteps {
     assertThat(support.getProcessInstance()).isWaitingAt(activityId);
     LOG.debug("Step {} reached.", activityId);
   }
+
+  /**
+   * Waits for the process to reach the step. The wait ends as soon as the
+   * step is entered or the process ends, the result is verified once. Engines
+   * without event trace are polled.
+   * 
+   * @param activityId
+   *          name of the step to reach.
+   * @param seconds
+   *          maximum time to wait.
+   */
+  @Then("the step $activityId is reached within $seconds seconds")
+  @When("the step $activityId is reached within $seconds seconds")
+  public void stepIsReachedWithin(final String activityId, final long seconds) {
+    Boolean reached = support.awaitActivity(activityId, seconds, TimeUnit.SECONDS);
+    if (reached == null) {
+      reached = support.pollActivity(activityId, seconds, TimeUnit.SECONDS);
+    }
+    if (reached) {
+      LOG.debug("Step {} reached.", activityId);
+    } else {
+      stepIsReached(activityId);
+    }
+  }
+
+  /**
+   * Waits for the process to finish. Engines without event trace are polled.
+   * 
+   * @param seconds
+   *          maximum time to wait.
+   */
+  @Then("the process is finished within $seconds seconds")
+  public void processIsFinishedWithin(final long seconds) {
+    Boolean ended = support.awaitProcessEnd(seconds, TimeUnit.SECONDS);
+    if (ended == null) {
+      ended = support.pollProcessEnd(seconds, TimeUnit.SECONDS);
+    }
+    if (!ended) {
+      processIsFinished();
+    }
+  }
 }
@@ -0,0 +1,210 @@
+package org.camunda.bpm.bdd.steps;
+
+import static com.google.common.base.Preconditions.checkState;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+
+import org.camunda.bpm.bdd.PerformanceReporter;
+import org.camunda.bpm.data.GuardMetrics;
+import org.camunda.bpm.engine.RuntimeService;
+import org.camunda.bpm.engine.runtime.ProcessInstance;
+import org.camunda.bpm.test.CamundaSupport;
+import org.camunda.bpm.util.LatencyHistogram;
+import org.camunda.bpm.test.RowResult;
+import org.jbehave.core.annotations.AfterStory;
+import org.jbehave.core.annotations.Given;
+import org.jbehave.core.annotations.Then;
+import org.jbehave.core.annotations.When;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+
+/**
+ * Steps measuring process start latency and throughput. <br />
+ * The figures of the last load run of a story are checked against the budgets
+ * of the story and published into the report by the
+ * {@link PerformanceReporter}. Use together with {@link CamundaSteps}. <br />
+ * The {@link GuardMetrics} are global for the JVM, run stories recording them
+ * sequentially.
+ * 
+ * @author Simon Zambrovski, Holisticon AG.
+ */
+public class PerformanceSteps {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PerformanceSteps.class);
+
+  private final ThreadLocal<LoadRun> lastRun = new ThreadLocal<LoadRun>();
+
+  @Inject
+  private CamundaSupport support;
+
+  /**
+   * Forgets the figures of the story.
+   */
+  @AfterStory(uponGivenStory = false)
+  public void cleanUp() {
+    lastRun.remove();
+  }
+
+  /**
+   * Starts process instances concurrently and records the start latencies.
+   * Only the start calls are measured, the throughput is computed from the
+   * time between the begin of the first and the end of the last start. The
+   * started instances are not registered in the story.
+   * 
+   * @param count
+   *          number of instances.
+   * @param processKey
+   *          process definition key.
+   * @param concurrency
+   *          number of threads starting instances.
+   */
+  @When("$count instances of process $processKey are started with concurrency $concurrency")
+  public void startProcesses(final int count, final String processKey, final int concurrency) {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    final List<Integer> rows = Lists.newArrayListWithCapacity(count);
+    for (int i = 0; i < count; i++) {
+      rows.add(i);
+    }
+
+    final RuntimeService runtimeService = support.getProcessEngine().getRuntimeService();
+    final AtomicLong firstStart = new AtomicLong(Long.MAX_VALUE);
+    final AtomicLong lastEnd = new AtomicLong(Long.MIN_VALUE);
+    final List<RowResult<ProcessInstance>> results = support.runRows(rows, new Function<Integer, ProcessInstance>() {
+      @Override
+      public ProcessInstance apply(final Integer row) {
+        final long started = System.nanoTime();
+        final ProcessInstance processInstance = runtimeService.startProcessInstanceByKey(processKey);
+        final long ended = System.nanoTime();
+        histogram.record(ended - started, TimeUnit.NANOSECONDS);
+        min(firstStart, started);
+        max(lastEnd, ended);
+        return processInstance;
+      }
+    }, concurrency);
+    final LoadRun run = new LoadRun(histogram, histogram.getCount() > 0 ? lastEnd.get() - firstStart.get() : 0);
+    lastRun.set(run);
+
+    int failed = 0;
+    for (final RowResult<ProcessInstance> result : results) {
+      if (result.isFailed()) {
+        failed++;
+        LOG.debug("{}", result);
+      }
+    }
+    PerformanceReporter.publish("instances started", histogram.getCount() + " of " + count + " (" + processKey + ", concurrency " + concurrency + ")");
+    PerformanceReporter.publish("start latency", histogram);
+    PerformanceReporter.publish("throughput", String.format("%.1f instances/s", run.throughput()));
+    assertTrue(failed + " of " + count + " instances failed to start.", failed == 0);
+  }
+
+  /**
+   * Checks the start latency percentile of the last load run.
+   * 
+   * @param percentile
+   *          percentile, e.g. 99.
+   * @param millis
+   *          latency budget in milliseconds.
+   */
+  @Then("the p$percentile start latency is below $millis ms")
+  public void startLatencyIsBelow(final double percentile, final double millis) {
+    final double actual = run().histogram.getPercentileMillis(percentile);
+    PerformanceReporter.publish("p" + percentile + " start latency budget", String.format("%.3f ms (actual %.3f ms)", millis, actual));
+    assertTrue(String.format("p%s start latency %.3f ms exceeds %.3f ms (%s)", percentile, actual, millis, run().histogram), actual < millis);
+  }
+
+  /**
+   * Checks the throughput of the last load run.
+   * 
+   * @param rate
+   *          minimal number of started instances per second.
+   */
+  @Then("throughput is at least $rate instances/s")
+  public void throughputIsAtLeast(final double rate) {
+    final double actual = run().throughput();
+    PerformanceReporter.publish("throughput budget", String.format("%.1f instances/s (actual %.1f instances/s)", rate, actual));
+    assertTrue(String.format("Throughput %.1f instances/s is below %.1f instances/s", actual, rate), actual >= rate);
+  }
+
+  /**
+   * Starts recording of guard metrics, discarding previous figures.
+   */
+  @Given("guard metrics are recorded")
+  public void recordGuardMetrics() {
+    GuardMetrics.reset();
+    GuardMetrics.enable();
+  }
+
+  /**
+   * Stops recording of guard metrics and publishes the figures.
+   */
+  @Then("guard metrics are published")
+  public void publishGuardMetrics() {
+    GuardMetrics.disable();
+    for (final GuardMetrics.Entry entry : GuardMetrics.getEntries()) {
+      PerformanceReporter.publish("guard " + entry.getGuardClass() + "@" + entry.getActivityId() + "/" + entry.getEventName(),
+          String.format("invocations=%d, violations=%d, %s", entry.getInvocations(), entry.getViolations(), entry.getLatency()));
+    }
+  }
+
+  /**
+   * Checks the guard latency percentile of all recorded invocations.
+   * 
+   * @param percentile
+   *          percentile, e.g. 99.
+   * @param millis
+   *          latency budget in milliseconds.
+   */
+  @Then("the p$percentile guard latency is below $millis ms")
+  public void guardLatencyIsBelow(final double percentile, final double millis) {
+    for (final GuardMetrics.Entry entry : GuardMetrics.getEntries()) {
+      final double actual = entry.getLatency().getPercentileMillis(percentile);
+      assertTrue(String.format("p%s guard latency %.3f ms exceeds %.3f ms (%s)", percentile, actual, millis, entry), actual < millis);
+    }
+  }
+
+  private static void min(final AtomicLong value, final long candidate) {
+    long current = value.get();
+    while (candidate < current && !value.compareAndSet(current, candidate)) {
+      current = value.get();
+    }
+  }
+
+  private static void max(final AtomicLong value, final long candidate) {
+    long current = value.get();
+    while (candidate > current && !value.compareAndSet(current, candidate)) {
+      current = value.get();
+    }
+  }
+
+  private LoadRun run() {
+    final LoadRun run = lastRun.get();
+    checkState(run != null, "No instances started with concurrency.");
+    return run;
+  }
+
+  /**
+   * Figures of one load run.
+   */
+  private static class LoadRun {
+
+    private final LatencyHistogram histogram;
+    private final long durationNanos;
+
+    LoadRun(final LatencyHistogram histogram, final long durationNanos) {
+      this.histogram = histogram;
+      this.durationNanos = durationNanos;
+    }
+
+    double throughput() {
+      return durationNanos > 0 ? histogram.getCount() * (double) TimeUnit.SECONDS.toNanos(1) / durationNanos : 0;
+    }
+  }
+}
@@ -0,0 +1,238 @@
+package org.camunda.bpm.data;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.ConcurrentMap;
+
+import org.camunda.bpm.engine.delegate.DelegateExecution;
+import org.camunda.bpm.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.camunda.bpm.engine.impl.context.Context;
+
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
+
+/**
+ * Engine level switch of the guards. <br />
+ * Guards can be enabled or disabled for the whole engine, per process
+ * definition key and per guard class, the most specific setting wins. Enabled
+ * guards check a sample of the process instances only, if a sampling rate
+ * below 1 is set. The sample is derived from the mixed hash of the process
+ * instance id, so an instance is either checked on every activity or not at
+ * all. <br />
+ * No process variable is read for the decision, unless the variable
+ * {@link Guards#VARIABLE_SKIP_GUARDS} is enabled by
+ * {@link #setSkipVariableHonored(boolean)}. <br />
+ * Installed by the {@link GuardControlPlugin}. On engines without the plugin,
+ * the guards honor the variable only.
+ * 
+ * @author Simon Zambrovski, holisticon AG
+ */
+public class GuardControl {
+
+  private static final int SAMPLE_RANGE = 10000;
+  private static final ConcurrentMap<ProcessEngineConfigurationImpl, GuardControl> CONTROLS = new MapMaker().weakKeys().makeMap();
+
+  private final ConcurrentMap<String, Boolean> processDefinitions = Maps.newConcurrentMap();
+  private final ConcurrentMap<String, Boolean> guardClasses = Maps.newConcurrentMap();
+  private final ConcurrentMap<String, String> processDefinitionKeys = Maps.newConcurrentMap();
+  private volatile boolean enabled = true;
+  private volatile int sample = SAMPLE_RANGE;
+  private volatile boolean skipVariableHonored;
+
+  /**
+   * Retrieves the control of the engine executing the current command.
+   * 
+   * @return control or null, if called outside of a command or the engine has
+   *         been built without the plugin.
+   */
+  public static GuardControl current() {
+    final ProcessEngineConfigurationImpl configuration = Context.getProcessEngineConfiguration();
+    return configuration != null ? CONTROLS.get(configuration) : null;
+  }
+
+  /**
+   * Installs the control on the engine configuration.
+   * 
+   * @param configuration
+   *          configuration of the engine.
+   */
+  void install(final ProcessEngineConfigurationImpl configuration) {
+    CONTROLS.put(configuration, this);
+  }
+
+  /**
+   * Decides if the guard checks the execution.
+   * 
+   * @param guard
+   *          guard to dispatch to.
+   * @param execution
+   *          process execution.
+   * @return true, if the checks are executed.
+   */
+  public boolean isChecked(final Guard guard, final DelegateExecution execution) {
+    if (!guardClasses.isEmpty()) {
+      final Boolean guardEnabled = guardClasses.get(guard.getClass().getName());
+      if (guardEnabled != null) {
+        return guardEnabled && isSampled(execution);
+      }
+    }
+    if (!processDefinitions.isEmpty()) {
+      final Boolean definitionEnabled = processDefinitions.get(processDefinitionKey(execution));
+      if (definitionEnabled != null) {
+        return definitionEnabled && isSampled(execution);
+      }
+    }
+    return enabled && isSampled(execution);
+  }
+
+  /**
+   * Enables or disables the guards of the engine.
+   * 
+   * @param enabled
+   *          true, to check.
+   * @return this control.
+   */
+  public GuardControl setEnabled(final boolean enabled) {
+    this.enabled = enabled;
+    return this;
+  }
+
+  /**
+   * Checks if the guards of the engine are enabled.
+   * 
+   * @return true, if enabled.
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Enables or disables the guards of a process definition, overriding the
+   * engine setting.
+   * 
+   * @param processDefinitionKey
+   *          process definition key.
+   * @param enabled
+   *          true, to check.
+   * @return this control.
+   */
+  public GuardControl setEnabled(final String processDefinitionKey, final boolean enabled) {
+    checkArgument(processDefinitionKey != null, "processDefinitionKey must not be null!");
+    processDefinitions.put(processDefinitionKey, enabled);
+    return this;
+  }
+
+  /**
+   * Enables or disables a guard class, overriding the process definition and
+   * engine settings.
+   * 
+   * @param guardClass
+   *          guard class.
+   * @param enabled
+   *          true, to check.
+   * @return this control.
+   */
+  public GuardControl setEnabled(final Class<? extends Guard> guardClass, final boolean enabled) {
+    checkArgument(guardClass != null, "guardClass must not be null!");
+    guardClasses.put(guardClass.getName(), enabled);
+    return this;
+  }
+
+  /**
+   * Sets the share of process instances checked by enabled guards.
+   * 
+   * @param samplingRate
+   *          rate between 0 and 1, e.g. 0.01 to check one percent.
+   * @return this control.
+   */
+  public GuardControl setSamplingRate(final double samplingRate) {
+    checkArgument(samplingRate >= 0 && samplingRate <= 1, "samplingRate must be between 0 and 1!");
+    this.sample = (int) Math.round(samplingRate * SAMPLE_RANGE);
+    return this;
+  }
+
+  /**
+   * Retrieves the share of process instances checked by enabled guards.
+   * 
+   * @return rate between 0 and 1.
+   */
+  public double getSamplingRate() {
+    return (double) sample / SAMPLE_RANGE;
+  }
+
+  /**
+   * Enables or disables the variable {@link Guards#VARIABLE_SKIP_GUARDS}.
+   * Enable it, if processes are started with {@link Guards#MAP_SKIP_GUARDS};
+   * then the variable is read on every guarded activity.
+   * 
+   * @param skipVariableHonored
+   *          true, to skip guards of process instances with the variable set.
+   * @return this control.
+   */
+  public GuardControl setSkipVariableHonored(final boolean skipVariableHonored) {
+    this.skipVariableHonored = skipVariableHonored;
+    return this;
+  }
+
+  /**
+   * Checks if the variable {@link Guards#VARIABLE_SKIP_GUARDS} is honored.
+   * 
+   * @return true, if honored, false by default.
+   */
+  public boolean isSkipVariableHonored() {
+    return skipVariableHonored;
+  }
+
+  /**
+   * Removes the process definition and guard class settings, checks all
+   * process instances and ignores the skip variable.
+   */
+  public void reset() {
+    processDefinitions.clear();
+    guardClasses.clear();
+    enabled = true;
+    sample = SAMPLE_RANGE;
+    skipVariableHonored = false;
+  }
+
+  private boolean isSampled(final DelegateExecution execution) {
+    final int current = sample;
+    if (current >= SAMPLE_RANGE) {
+      return true;
+    }
+    final String processInstanceId = execution.getProcessInstanceId();
+    return processInstanceId != null && (mix(processInstanceId.hashCode()) & Integer.MAX_VALUE) % SAMPLE_RANGE < current;
+  }
+
+  /**
+   * Spreads the bits of the hash (murmur3 finalizer), so sequential ids do not
+   * cluster in the sample.
+   */
+  static int mix(final int hash) {
+    int h = hash;
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h;
+  }
+
+  /**
+   * Retrieves the key from the process definition id "key:version:id", cached
+   * per id.
+   */
+  private String processDefinitionKey(final DelegateExecution execution) {
+    final String processDefinitionId = execution.getProcessDefinitionId();
+    if (processDefinitionId == null) {
+      return "";
+    }
+    String key = processDefinitionKeys.get(processDefinitionId);
+    if (key == null) {
+      final int separator = processDefinitionId.indexOf(':');
+      key = separator > 0 ? processDefinitionId.substring(0, separator) : processDefinitionId;
+      processDefinitionKeys.put(processDefinitionId, key);
+    }
+    return key;
+  }
+}
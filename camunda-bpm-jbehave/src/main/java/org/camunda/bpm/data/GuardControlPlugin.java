@@ -0,0 +1,65 @@
+package org.camunda.bpm.data;
+
+import org.camunda.bpm.engine.ProcessEngine;
+import org.camunda.bpm.engine.impl.cfg.AbstractProcessEnginePlugin;
+import org.camunda.bpm.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.camunda.bpm.util.ProcessEnginePlugins;
+
+/**
+ * Process engine plugin installing a {@link GuardControl} on the engine. <br />
+ * Register it with a sampling rate below 1 to check a share of the process
+ * instances only, e.g. in production:
+ * 
+ * <pre>
+ * configuration.getProcessEnginePlugins().add(new GuardControlPlugin(0.01));
+ * </pre>
+ * 
+ * @author Simon Zambrovski, holisticon AG
+ */
+public class GuardControlPlugin extends AbstractProcessEnginePlugin {
+
+  private final GuardControl control = new GuardControl();
+
+  /**
+   * Creates the plugin checking all process instances.
+   */
+  public GuardControlPlugin() {
+    this(1);
+  }
+
+  /**
+   * Creates the plugin checking a share of the process instances.
+   * 
+   * @param samplingRate
+   *          rate between 0 and 1.
+   */
+  public GuardControlPlugin(final double samplingRate) {
+    control.setSamplingRate(samplingRate);
+  }
+
+  /**
+   * Retrieves the guard control of the engine.
+   * 
+   * @param processEngine
+   *          process engine.
+   * @return control or null, if the engine has been built without the plugin.
+   */
+  public static GuardControl controlOf(final ProcessEngine processEngine) {
+    final GuardControlPlugin plugin = ProcessEnginePlugins.find(processEngine, GuardControlPlugin.class);
+    return plugin != null ? plugin.getControl() : null;
+  }
+
+  @Override
+  public void preInit(final ProcessEngineConfigurationImpl configuration) {
+    control.install(configuration);
+  }
+
+  /**
+   * Retrieves the control.
+   * 
+   * @return control of the engine.
+   */
+  public GuardControl getControl() {
+    return control;
+  }
+}
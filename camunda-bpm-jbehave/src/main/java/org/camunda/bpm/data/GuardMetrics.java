@@ -0,0 +1,220 @@
+package org.camunda.bpm.data;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.camunda.bpm.util.LatencyHistogram;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+/**
+ * In-process metrics of the guards: invocations, violations and latency per
+ * guard class, activity and event. <br />
+ * Disabled by default, enable by the system property
+ * {@value #ENABLED_PROPERTY} or by {@link #enable()}. If disabled, the guard
+ * dispatch only reads one volatile flag. The metrics are global for the JVM.
+ * 
+ * @author Simon Zambrovski, holisticon AG
+ */
+public final class GuardMetrics {
+
+  /**
+   * System property enabling the metrics on start-up.
+   */
+  public static final String ENABLED_PROPERTY = "camunda.bpm.data.guardMetrics";
+
+  private static final ConcurrentMap<Key, Entry> ENTRIES = Maps.newConcurrentMap();
+  private static volatile boolean enabled = Boolean.getBoolean(ENABLED_PROPERTY);
+
+  private GuardMetrics() {
+    // no instances
+  }
+
+  /**
+   * Checks if metrics are recorded.
+   * 
+   * @return true, if enabled.
+   */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Starts recording.
+   */
+  public static void enable() {
+    enabled = true;
+  }
+
+  /**
+   * Stops recording, keeping the recorded metrics.
+   */
+  public static void disable() {
+    enabled = false;
+  }
+
+  /**
+   * Removes all recorded metrics.
+   */
+  public static void reset() {
+    ENTRIES.clear();
+  }
+
+  /**
+   * Retrieves the recorded metrics.
+   * 
+   * @return one entry per guard class, activity and event.
+   */
+  public static List<Entry> getEntries() {
+    return ImmutableList.copyOf(ENTRIES.values());
+  }
+
+  /**
+   * Records a guard invocation.
+   * 
+   * @param guard
+   *          invoked guard.
+   * @param activityId
+   *          current activity.
+   * @param eventName
+   *          listener event.
+   * @param durationNanos
+   *          duration of the checks.
+   * @param violated
+   *          true, if the checks failed.
+   */
+  static void record(final Guard guard, final String activityId, final String eventName, final long durationNanos, final boolean violated) {
+    final Key key = new Key(guard.getClass().getName(), activityId, eventName);
+    Entry entry = ENTRIES.get(key);
+    if (entry == null) {
+      final Entry created = new Entry(key);
+      entry = ENTRIES.putIfAbsent(key, created);
+      if (entry == null) {
+        entry = created;
+      }
+    }
+    entry.record(durationNanos, violated);
+  }
+
+  /**
+   * Metrics of one guard class on one activity and event.
+   */
+  public static class Entry {
+
+    private final Key key;
+    private final AtomicLong invocations = new AtomicLong();
+    private final AtomicLong violations = new AtomicLong();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    Entry(final Key key) {
+      this.key = key;
+    }
+
+    void record(final long durationNanos, final boolean violated) {
+      invocations.incrementAndGet();
+      if (violated) {
+        violations.incrementAndGet();
+      }
+      latency.record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Retrieves the name of the guard class.
+     * 
+     * @return class name.
+     */
+    public String getGuardClass() {
+      return key.guardClass;
+    }
+
+    /**
+     * Retrieves the activity.
+     * 
+     * @return activity id.
+     */
+    public String getActivityId() {
+      return key.activityId;
+    }
+
+    /**
+     * Retrieves the listener event.
+     * 
+     * @return event name.
+     */
+    public String getEventName() {
+      return key.eventName;
+    }
+
+    /**
+     * Retrieves the number of invocations.
+     * 
+     * @return invocations.
+     */
+    public long getInvocations() {
+      return invocations.get();
+    }
+
+    /**
+     * Retrieves the number of failed checks.
+     * 
+     * @return violations.
+     */
+    public long getViolations() {
+      return violations.get();
+    }
+
+    /**
+     * Retrieves the latency of the checks.
+     * 
+     * @return histogram.
+     */
+    public LatencyHistogram getLatency() {
+      return latency;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s@%s/%s: invocations=%d, violations=%d, %s", key.guardClass, key.activityId, key.eventName, getInvocations(),
+          getViolations(), latency);
+    }
+  }
+
+  /**
+   * Key of an entry.
+   */
+  private static class Key {
+
+    private final String guardClass;
+    private final String activityId;
+    private final String eventName;
+
+    Key(final String guardClass, final String activityId, final String eventName) {
+      this.guardClass = guardClass;
+      this.activityId = activityId;
+      this.eventName = eventName;
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+      if (!(other instanceof Key)) {
+        return false;
+      }
+      final Key key = (Key) other;
+      return guardClass.equals(key.guardClass) && equal(activityId, key.activityId) && equal(eventName, key.eventName);
+    }
+
+    @Override
+    public int hashCode() {
+      int hash = guardClass.hashCode();
+      hash = 31 * hash + (activityId != null ? activityId.hashCode() : 0);
+      return 31 * hash + (eventName != null ? eventName.hashCode() : 0);
+    }
+
+    private static boolean equal(final String first, final String second) {
+      return first == null ? second == null : first.equals(second);
+    }
+  }
+}
@@ -0,0 +1,219 @@
+package org.camunda.bpm.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.camunda.bpm.engine.ProcessEngine;
+import org.camunda.bpm.engine.delegate.DelegateExecution;
+import org.camunda.bpm.engine.delegate.ExecutionListener;
+import org.camunda.bpm.engine.delegate.TaskListener;
+import org.camunda.bpm.engine.impl.bpmn.behavior.UserTaskActivityBehavior;
+import org.camunda.bpm.engine.impl.bpmn.parser.AbstractBpmnParseListener;
+import org.camunda.bpm.engine.impl.bpmn.parser.BpmnParseListener;
+import org.camunda.bpm.engine.impl.cfg.AbstractProcessEnginePlugin;
+import org.camunda.bpm.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.camunda.bpm.engine.impl.pvm.process.ActivityImpl;
+import org.camunda.bpm.engine.impl.pvm.process.ScopeImpl;
+import org.camunda.bpm.engine.impl.task.TaskDefinition;
+import org.camunda.bpm.engine.impl.util.xml.Element;
+import org.camunda.bpm.util.ProcessEnginePlugins;
+
+/**
+ * Process engine plugin attaching the guards of a {@link GuardRegistry} to the
+ * activities of parsed process definitions. <br />
+ * The registered guard instances are attached directly, so the engine does
+ * not instantiate listener classes and the models need no listener
+ * declarations. Task listener guards are attached to user tasks on create and
+ * complete, all other guards to activities on start and end. Events
+ * (including boundary events), gateways, tasks, sub processes, transactions
+ * and call activities are guarded. Guards declared
+ * in the model as well are invoked twice. Register the guards before
+ * deploying:
+ * 
+ * <pre>
+ * final GuardParsePlugin plugin = new GuardParsePlugin();
+ * plugin.getRegistry().register(&quot;service_load_contract_data&quot;, new AutomaticProcessingGuard());
+ * configuration.getProcessEnginePlugins().add(plugin);
+ * </pre>
+ * 
+ * @author Simon Zambrovski, holisticon AG
+ */
+public class GuardParsePlugin extends AbstractProcessEnginePlugin {
+
+  private final GuardRegistry registry = new GuardRegistry();
+
+  /**
+   * Retrieves the guard registry of the engine.
+   * 
+   * @param processEngine
+   *          process engine.
+   * @return registry or null, if the engine has been built without the plugin.
+   */
+  public static GuardRegistry registryOf(final ProcessEngine processEngine) {
+    final GuardParsePlugin plugin = ProcessEnginePlugins.find(processEngine, GuardParsePlugin.class);
+    return plugin != null ? plugin.getRegistry() : null;
+  }
+
+  @Override
+  public void preInit(final ProcessEngineConfigurationImpl configuration) {
+    List<BpmnParseListener> listeners = configuration.getCustomPostBPMNParseListeners();
+    if (listeners == null) {
+      listeners = new ArrayList<BpmnParseListener>();
+      configuration.setCustomPostBPMNParseListeners(listeners);
+    }
+    listeners.add(new GuardParseListener(registry));
+  }
+
+  /**
+   * Retrieves the registry.
+   * 
+   * @return registry of the engine.
+   */
+  public GuardRegistry getRegistry() {
+    return registry;
+  }
+
+  /**
+   * Parse listener attaching the registered guards.
+   */
+  private static class GuardParseListener extends AbstractBpmnParseListener {
+
+    private final GuardRegistry registry;
+
+    GuardParseListener(final GuardRegistry registry) {
+      this.registry = registry;
+    }
+
+    @Override
+    public void parseStartEvent(final Element startEventElement, final ScopeImpl scope, final ActivityImpl startEventActivity) {
+      attach(startEventActivity);
+    }
+
+    @Override
+    public void parseEndEvent(final Element endEventElement, final ScopeImpl scope, final ActivityImpl activity) {
+      attach(activity);
+    }
+
+    @Override
+    public void parseIntermediateCatchEvent(final Element intermediateEventElement, final ScopeImpl scope, final ActivityImpl activity) {
+      attach(activity);
+    }
+
+    @Override
+    public void parseIntermediateThrowEvent(final Element intermediateEventElement, final ScopeImpl scope, final ActivityImpl activity) {
+      attach(activity);
+    }
+
+    @Override
+    public void parseExclusiveGateway(final Element exclusiveGwElement, final ScopeImpl scope, final ActivityImpl activity) {
+      attach(activity);
+    }
+
+    @Override
+    public void parseBoundaryEvent(final Element boundaryEventElement, final ScopeImpl scopeElement, final ActivityImpl nestedActivity) {
+      attach(nestedActivity);
+    }
+
+    @Override
+    public void parseEventBasedGateway(final Element eventBasedGwElement, final ScopeImpl scope, final ActivityImpl activity) {
+      attach(activity);
+    }
+
+    @Override
+    public void parseInclusiveGateway(final Element inclusiveGwElement, final ScopeImpl scope, final ActivityImpl activity) {
+      attach(activity);
+    }
+
+    @Override
+    public void parseParallelGateway(final Element parallelGwElement, final ScopeImpl scope, final ActivityImpl activity) {
+      attach(activity);
+    }
+
+    @Override
+    public void parseTask(final Element taskElement, final ScopeImpl scope, final ActivityImpl activity) {
+      attach(activity);
+    }
+
+    @Override
+    public void parseManualTask(final Element manualTaskElement, final ScopeImpl scope, final ActivityImpl activity) {
+      attach(activity);
+    }
+
+    @Override
+    public void parseUserTask(final Element userTaskElement, final ScopeImpl scope, final ActivityImpl activity) {
+      attach(activity);
+    }
+
+    @Override
+    public void parseServiceTask(final Element serviceTaskElement, final ScopeImpl scope, final ActivityImpl activity) {
+      attach(activity);
+    }
+
+    @Override
+    public void parseScriptTask(final Element scriptTaskElement, final ScopeImpl scope, final ActivityImpl activity) {
+      attach(activity);
+    }
+
+    @Override
+    public void parseBusinessRuleTask(final Element businessRuleTaskElement, final ScopeImpl scope, final ActivityImpl activity) {
+      attach(activity);
+    }
+
+    @Override
+    public void parseSendTask(final Element sendTaskElement, final ScopeImpl scope, final ActivityImpl activity) {
+      attach(activity);
+    }
+
+    @Override
+    public void parseReceiveTask(final Element receiveTaskElement, final ScopeImpl scope, final ActivityImpl activity) {
+      attach(activity);
+    }
+
+    @Override
+    public void parseSubProcess(final Element subProcessElement, final ScopeImpl scope, final ActivityImpl activity) {
+      attach(activity);
+    }
+
+    @Override
+    public void parseTransaction(final Element transactionElement, final ScopeImpl scope, final ActivityImpl activity) {
+      attach(activity);
+    }
+
+    @Override
+    public void parseCallActivity(final Element callActivityElement, final ScopeImpl scope, final ActivityImpl activity) {
+      attach(activity);
+    }
+
+    private void attach(final ActivityImpl activity) {
+      for (final Guard guard : registry.guardsOf(activity.getId())) {
+        if (guard instanceof TaskListener && activity.getActivityBehavior() instanceof UserTaskActivityBehavior) {
+          final TaskDefinition taskDefinition = ((UserTaskActivityBehavior) activity.getActivityBehavior()).getTaskDefinition();
+          taskDefinition.addTaskListener(TaskListener.EVENTNAME_CREATE, (TaskListener) guard);
+          taskDefinition.addTaskListener(TaskListener.EVENTNAME_COMPLETE, (TaskListener) guard);
+        } else {
+          final ExecutionListener listener = guard instanceof ExecutionListener ? (ExecutionListener) guard : new GuardListener(guard);
+          activity.addListener(ExecutionListener.EVENTNAME_START, listener);
+          activity.addListener(ExecutionListener.EVENTNAME_END, listener);
+        }
+      }
+    }
+  }
+
+  /**
+   * Execution listener dispatching to a guard, which is no execution listener
+   * itself.
+   */
+  private static class GuardListener implements ExecutionListener {
+
+    private final Guard guard;
+
+    GuardListener(final Guard guard) {
+      this.guard = guard;
+    }
+
+    @Override
+    public void notify(final DelegateExecution execution) throws Exception {
+      Guards.dispatch(guard, execution.getEventName(), execution);
+    }
+  }
+}
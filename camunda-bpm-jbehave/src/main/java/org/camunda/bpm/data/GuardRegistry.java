@@ -0,0 +1,112 @@
+package org.camunda.bpm.data;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Pattern;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+/**
+ * Registry of guards by activity id or activity id pattern, used by the
+ * {@link GuardParsePlugin} to attach guards at deployment time. <br />
+ * The guards are shared by all activities and process instances they are
+ * attached to and must be stateless.
+ * 
+ * @author Simon Zambrovski, holisticon AG
+ */
+public class GuardRegistry {
+
+  private final ConcurrentMap<String, List<Guard>> byActivityId = Maps.newConcurrentMap();
+  private final List<PatternGuard> byPattern = new CopyOnWriteArrayList<PatternGuard>();
+
+  /**
+   * Registers a guard for an activity.
+   * 
+   * @param activityId
+   *          activity id.
+   * @param guard
+   *          stateless guard.
+   * @return this registry.
+   */
+  public GuardRegistry register(final String activityId, final Guard guard) {
+    checkArgument(activityId != null, "activityId must not be null!");
+    checkArgument(guard != null, "guard must not be null!");
+    List<Guard> guards = byActivityId.get(activityId);
+    if (guards == null) {
+      final List<Guard> created = new CopyOnWriteArrayList<Guard>();
+      guards = byActivityId.putIfAbsent(activityId, created);
+      if (guards == null) {
+        guards = created;
+      }
+    }
+    guards.add(guard);
+    return this;
+  }
+
+  /**
+   * Registers a guard for all activities with ids matching the pattern.
+   * 
+   * @param activityIdPattern
+   *          regular expression matching the whole activity id.
+   * @param guard
+   *          stateless guard.
+   * @return this registry.
+   */
+  public GuardRegistry registerPattern(final String activityIdPattern, final Guard guard) {
+    checkArgument(activityIdPattern != null, "activityIdPattern must not be null!");
+    checkArgument(guard != null, "guard must not be null!");
+    byPattern.add(new PatternGuard(Pattern.compile(activityIdPattern), guard));
+    return this;
+  }
+
+  /**
+   * Retrieves the guards of an activity, registered by id first.
+   * 
+   * @param activityId
+   *          activity id.
+   * @return guards, empty if none is registered.
+   */
+  public List<Guard> guardsOf(final String activityId) {
+    if (activityId == null) {
+      return ImmutableList.of();
+    }
+    final ImmutableList.Builder<Guard> guards = ImmutableList.builder();
+    final List<Guard> registered = byActivityId.get(activityId);
+    if (registered != null) {
+      guards.addAll(registered);
+    }
+    for (final PatternGuard patternGuard : byPattern) {
+      if (patternGuard.pattern.matcher(activityId).matches()) {
+        guards.add(patternGuard.guard);
+      }
+    }
+    return guards.build();
+  }
+
+  /**
+   * Removes all registrations. Activities of deployed definitions keep their
+   * guards until they are parsed again.
+   */
+  public void clear() {
+    byActivityId.clear();
+    byPattern.clear();
+  }
+
+  /**
+   * Guard registered by pattern.
+   */
+  private static class PatternGuard {
+
+    private final Pattern pattern;
+    private final Guard guard;
+
+    PatternGuard(final Pattern pattern, final Guard guard) {
+      this.pattern = pattern;
+      this.guard = guard;
+    }
+  }
+}
@@ -0,0 +1,110 @@
+package org.camunda.bpm.data;
+
+import java.util.concurrent.ConcurrentMap;
+
+import org.camunda.bpm.engine.delegate.DelegateExecution;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Specification of the pre- and post-conditions of a guard, compiled into
+ * {@link VariableCheck}s. <br />
+ * Created from the {@link GuardVariables} annotation of a guard class (once
+ * per class) or explicitly in code.
+ * 
+ * @author Simon Zambrovski, holisticon AG
+ */
+public final class GuardSpec {
+
+  /**
+   * Specification without conditions.
+   */
+  public static final GuardSpec NONE = new GuardSpec(VariableCheck.NONE, VariableCheck.NONE);
+
+  private static final ConcurrentMap<Class<?>, GuardSpec> COMPILED = Maps.newConcurrentMap();
+
+  private final VariableCheck preconditions;
+  private final VariableCheck postconditions;
+
+  private GuardSpec(final VariableCheck preconditions, final VariableCheck postconditions) {
+    this.preconditions = preconditions;
+    this.postconditions = postconditions;
+  }
+
+  /**
+   * Creates a specification.
+   * 
+   * @param preconditions
+   *          check on start or create.
+   * @param postconditions
+   *          check on end or complete.
+   * @return specification.
+   */
+  public static GuardSpec of(final VariableCheck preconditions, final VariableCheck postconditions) {
+    return new GuardSpec(preconditions != null ? preconditions : VariableCheck.NONE, postconditions != null ? postconditions
+        : VariableCheck.NONE);
+  }
+
+  /**
+   * Retrieves the specification declared by {@link GuardVariables} on the
+   * guard class.
+   * 
+   * @param guardClass
+   *          guard class.
+   * @return compiled specification, {@link #NONE} if not annotated.
+   */
+  public static GuardSpec forClass(final Class<?> guardClass) {
+    GuardSpec spec = COMPILED.get(guardClass);
+    if (spec == null) {
+      spec = compile(guardClass.getAnnotation(GuardVariables.class));
+      COMPILED.putIfAbsent(guardClass, spec);
+    }
+    return spec;
+  }
+
+  /**
+   * Checks the preconditions.
+   * 
+   * @param execution
+   *          process execution.
+   */
+  public void checkPreconditions(final DelegateExecution execution) {
+    preconditions.check(execution);
+  }
+
+  /**
+   * Checks the postconditions.
+   * 
+   * @param execution
+   *          process execution.
+   */
+  public void checkPostconditions(final DelegateExecution execution) {
+    postconditions.check(execution);
+  }
+
+  /**
+   * Retrieves the check on start or create.
+   * 
+   * @return preconditions.
+   */
+  public VariableCheck getPreconditions() {
+    return preconditions;
+  }
+
+  /**
+   * Retrieves the check on end or complete.
+   * 
+   * @return postconditions.
+   */
+  public VariableCheck getPostconditions() {
+    return postconditions;
+  }
+
+  private static GuardSpec compile(final GuardVariables declaration) {
+    if (declaration == null) {
+      return NONE;
+    }
+    return of(VariableCheck.builder().isSet(declaration.preconditions()).isSetLocal(declaration.preconditionsLocal()).build(),
+        VariableCheck.builder().isSet(declaration.postconditions()).isSetLocal(declaration.postconditionsLocal()).build());
+  }
+}
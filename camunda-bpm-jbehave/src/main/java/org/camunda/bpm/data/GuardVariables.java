@@ -0,0 +1,43 @@
+package org.camunda.bpm.data;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares the variables required by a guard. <br />
+ * Put on subclasses of {@link ActivityGuard} or {@link TaskGuard}, which check
+ * the declared variables unless the check methods are overridden. The
+ * declaration is compiled once per class into a {@link GuardSpec}.
+ * 
+ * @author Simon Zambrovski, holisticon AG
+ */
+@Documented
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface GuardVariables {
+
+  /**
+   * Variables required on start or create, in the local or any parent scope.
+   */
+  String[] preconditions() default {};
+
+  /**
+   * Variables required on start or create in the local scope.
+   */
+  String[] preconditionsLocal() default {};
+
+  /**
+   * Variables required on end or complete, in the local or any parent scope.
+   */
+  String[] postconditions() default {};
+
+  /**
+   * Variables required on end or complete in the local scope.
+   */
+  String[] postconditionsLocal() default {};
+}
@@ -3,12 +3,11 @@ package org.camunda.bpm.data;
 import java.util.HashMap;
 import java.util.Map;
 
-import org.apache.commons.lang3.BooleanUtils;
 import org.camunda.bpm.engine.delegate.DelegateExecution;
+import org.camunda.bpm.engine.delegate.ExecutionListener;
+import org.camunda.bpm.engine.delegate.TaskListener;
 
 import com.google.common.base.Preconditions;
-import com.google.common.base.Predicate;
-import com.google.common.base.Predicates;
 
 /**
  * Utility class for checks in guards.
@@ -21,13 +20,13 @@ public final class Guards {
   public static final Map<String, Object> MAP_SKIP_GUARDS = new HashMap<String, Object>();
 
   private static final String VARIABLE_NAME_MUST_BE_NOT_NULL = "Variable name must be not null";
-  private static final Predicate<String> isPrecondition = Predicates.or(Predicates.equalTo("start"), Predicates.equalTo("create"));
-  private static final Predicate<String> isPostcondition = Predicates.or(Predicates.equalTo("end"), Predicates.equalTo("complete"));
 
   /**
    * Helper method for event dispatch. <br />
    * This method is used in abstract implementations {@link TaskGuard} and
-   * {@link ActivityGuard}
+   * {@link ActivityGuard}. Events other than start, create, end and complete
+   * are ignored without looking up any variable. Whether the checks run is
+   * decided by the {@link GuardControl} of the engine, if installed.
    * 
    * @param guard
    *          guard to be used for checks.
@@ -37,18 +36,62 @@ public final class Guards {
    *          process execution.
    */
   public static void dispatch(final Guard guard, final String eventName, final DelegateExecution execution) {
-    if (skipGuards(execution)) {
+    final boolean precondition = isPrecondition(eventName);
+    if (!precondition && !isPostcondition(eventName)) {
       return;
     }
+    if (!isChecked(guard, execution)) {
+      return;
+    }
+    if (GuardMetrics.isEnabled()) {
+      checkMeasured(guard, precondition, eventName, execution);
+    } else {
+      check(guard, precondition, execution);
+    }
+  }
 
-    if (isPrecondition.apply(eventName))
+  private static void check(final Guard guard, final boolean precondition, final DelegateExecution execution) {
+    if (precondition) {
       guard.checkPreconditions(execution);
-    else if (isPostcondition.apply(eventName))
+    } else {
       guard.checkPostconditions(execution);
+    }
+  }
+
+  private static void checkMeasured(final Guard guard, final boolean precondition, final String eventName, final DelegateExecution execution) {
+    final long start = System.nanoTime();
+    boolean violated = true;
+    try {
+      check(guard, precondition, execution);
+      violated = false;
+    } finally {
+      GuardMetrics.record(guard, execution.getCurrentActivityId(), eventName, System.nanoTime() - start, violated);
+    }
+  }
+
+  /**
+   * Decides if the guard checks the execution, by the {@link GuardControl} of
+   * the engine, if installed, and by the variable {@link #VARIABLE_SKIP_GUARDS},
+   * if the control honors it.
+   */
+  private static boolean isChecked(final Guard guard, final DelegateExecution execution) {
+    final GuardControl control = GuardControl.current();
+    if (control == null) {
+      return !skipGuards(execution);
+    }
+    return control.isChecked(guard, execution) && !(control.isSkipVariableHonored() && skipGuards(execution));
   }
 
   public static boolean skipGuards(final DelegateExecution execution) {
-    return BooleanUtils.toBoolean((Boolean) execution.getVariable(VARIABLE_SKIP_GUARDS));
+    return Boolean.TRUE.equals(execution.getVariable(VARIABLE_SKIP_GUARDS));
+  }
+
+  static boolean isPrecondition(final String eventName) {
+    return ExecutionListener.EVENTNAME_START.equals(eventName) || TaskListener.EVENTNAME_CREATE.equals(eventName);
+  }
+
+  static boolean isPostcondition(final String eventName) {
+    return ExecutionListener.EVENTNAME_END.equals(eventName) || TaskListener.EVENTNAME_COMPLETE.equals(eventName);
   }
 
   /**
@@ -62,13 +105,14 @@ public final class Guards {
   public static void checkIsSetLocal(final DelegateExecution execution, final String variableName) {
     Preconditions.checkArgument(variableName != null, VARIABLE_NAME_MUST_BE_NOT_NULL);
 
-    final Object variableLocal = execution.getVariableLocal(variableName);
-    Preconditions.checkState(variableLocal != null,
-        String.format("Condition of task '%s' is violated: Local variable '%s' is not set.", new Object[] { execution.getCurrentActivityId(), variableName }));
+    if (execution.getVariableLocal(variableName) == null) {
+      throw violation("Condition of task '%s' is violated: Local variable '%s' is not set.", execution, variableName);
+    }
   }
 
   /**
-   * Checks, if a variable with specified name is set (global and local).
+   * Checks, if a variable with specified name is set (global and local). The
+   * variable lookup starts in the local scope, so one lookup covers both.
    * 
    * @param execution
    *          process execution.
@@ -76,13 +120,11 @@ public final class Guards {
    *          name of the variable to check.
    */
   public static void checkIsSet(final DelegateExecution execution, final String variableName) {
-    Preconditions.checkArgument(variableName != null, "Variable name must be not null");
-
-    final Object variableLocal = execution.getVariableLocal(variableName);
-    final Object variable = execution.getVariable(variableName);
+    Preconditions.checkArgument(variableName != null, VARIABLE_NAME_MUST_BE_NOT_NULL);
 
-    Preconditions.checkState((variableLocal != null) || (variable != null),
-        String.format("Condition of task '%s' is violated: Variable '%s' is not set.", new Object[] { execution.getCurrentActivityId(), variableName }));
+    if (execution.getVariable(variableName) == null) {
+      throw violation("Condition of task '%s' is violated: Variable '%s' is not set.", execution, variableName);
+    }
   }
 
   /**
@@ -94,10 +136,18 @@ public final class Guards {
    *          name of the variable to check.
    */
   public static void checkIsSetGlobal(final DelegateExecution execution, final String variableName) {
-    Preconditions.checkArgument(variableName != null, VARIABLE_SKIP_GUARDS);
+    Preconditions.checkArgument(variableName != null, VARIABLE_NAME_MUST_BE_NOT_NULL);
+
+    if (execution.getVariable(variableName) == null) {
+      throw violation("Condition of task '%s' is violated: Global variable '%s' is not set.", execution, variableName);
+    }
+  }
 
-    final Object variable = execution.getVariable(variableName);
-    Preconditions.checkState(variable != null,
-        String.format("Condition of task '%s' is violated: Global variable '%s' is not set.", new Object[] { execution.getCurrentActivityId(), variableName }));
+  /**
+   * Creates the exception for a violated condition. The message is built
+   * only here, so passing checks do not allocate.
+   */
+  private static IllegalStateException violation(final String template, final DelegateExecution execution, final String variableName) {
+    return new IllegalStateException(String.format(template, execution.getCurrentActivityId(), variableName));
   }
 }
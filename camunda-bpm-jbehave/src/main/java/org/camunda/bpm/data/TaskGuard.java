@@ -19,19 +19,31 @@ public class TaskGuard implements TaskListener, Guard, Serializable {
   private static final long serialVersionUID = 1L;
 
   /**
-   * Empty implementation of pre-condition checks. <br />
+   * Checks the post-conditions of the {@link #getSpec() specification}. <br />
    * Override this method to implement your own. Please throw
    * {@link IllegalStateException} on contract violations.
    */
   public void checkPostconditions(DelegateExecution execution) throws IllegalStateException {
+    getSpec().checkPostconditions(execution);
   }
 
   /**
-   * Empty implementation of post-condition checks. <br />
+   * Checks the pre-conditions of the {@link #getSpec() specification}. <br />
    * Override this method to implement your own. Please throw
    * {@link IllegalStateException} on contract violations.
    */
   public void checkPreconditions(DelegateExecution execution) throws IllegalStateException {
+    getSpec().checkPreconditions(execution);
+  }
+
+  /**
+   * Retrieves the specification of the guard, declared by
+   * {@link GuardVariables} on the class by default.
+   * 
+   * @return guard specification.
+   */
+  protected GuardSpec getSpec() {
+    return GuardSpec.forClass(getClass());
   }
 
   /**
@@ -0,0 +1,193 @@
+package org.camunda.bpm.data;
+
+import java.util.List;
+import java.util.Set;
+
+import org.camunda.bpm.engine.delegate.DelegateExecution;
+import org.camunda.bpm.engine.impl.core.variable.scope.AbstractVariableScope;
+import org.camunda.bpm.engine.variable.VariableMap;
+import org.camunda.bpm.engine.variable.impl.VariableMapImpl;
+import org.camunda.bpm.engine.variable.type.ValueType;
+import org.camunda.bpm.engine.variable.value.TypedValue;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * Compiled check of required variables. <br />
+ * The declared variables are looked up together in one pass over the scope
+ * hierarchy (without deserialization), and all missing variables are reported
+ * together in one {@link IllegalStateException}. Use the {@link Builder} or
+ * the {@link GuardVariables} annotation to create it.
+ * 
+ * @author Simon Zambrovski, holisticon AG
+ */
+public final class VariableCheck {
+
+  /**
+   * Check without any requirement.
+   */
+  public static final VariableCheck NONE = new VariableCheck(ImmutableList.<String> of(), ImmutableList.<String> of());
+
+  private static final Joiner NAMES = Joiner.on("', '");
+
+  private final List<String> variables;
+  private final List<String> localVariables;
+
+  private VariableCheck(final List<String> variables, final List<String> localVariables) {
+    this.variables = variables;
+    this.localVariables = localVariables;
+  }
+
+  /**
+   * Creates a builder.
+   * 
+   * @return new builder.
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Checks the variables.
+   * 
+   * @param execution
+   *          process execution.
+   * @throws IllegalStateException
+   *           listing all missing variables, if at least one is missing.
+   */
+  public void check(final DelegateExecution execution) throws IllegalStateException {
+    if (isEmpty()) {
+      return;
+    }
+    final List<String> missing = variables.isEmpty() ? null : missing(lookUp(execution, variables, false), variables);
+    final List<String> missingLocal = localVariables.isEmpty() ? null : missing(lookUp(execution, localVariables, true), localVariables);
+    if (missing != null || missingLocal != null) {
+      throw new IllegalStateException(message(execution, missing, missingLocal));
+    }
+  }
+
+  /**
+   * Checks if the check has no requirements.
+   * 
+   * @return true, if no variables are required.
+   */
+  public boolean isEmpty() {
+    return variables.isEmpty() && localVariables.isEmpty();
+  }
+
+  /**
+   * Retrieves the names of the required variables (global or local).
+   * 
+   * @return variable names.
+   */
+  public List<String> getVariables() {
+    return variables;
+  }
+
+  /**
+   * Retrieves the names of the required local variables.
+   * 
+   * @return variable names.
+   */
+  public List<String> getLocalVariables() {
+    return localVariables;
+  }
+
+  /**
+   * Fetches the named variables in one pass over the scope hierarchy. Other
+   * implementations of the execution (e.g. mocks) are asked for all variables.
+   */
+  private static VariableMap lookUp(final DelegateExecution execution, final List<String> names, final boolean local) {
+    if (execution instanceof AbstractVariableScope) {
+      final VariableMapImpl found = new VariableMapImpl();
+      ((AbstractVariableScope) execution).collectVariables(found, names, local, false);
+      return found;
+    }
+    return local ? execution.getVariablesLocalTyped(false) : execution.getVariablesTyped(false);
+  }
+
+  /**
+   * Collects the names not set in the fetched variables.
+   * 
+   * @return missing names or null, if all are set.
+   */
+  private static List<String> missing(final VariableMap found, final List<String> names) {
+    List<String> missing = null;
+    for (final String name : names) {
+      final TypedValue value = found.getValueTyped(name);
+      if (value == null || ValueType.NULL.equals(value.getType())) {
+        if (missing == null) {
+          missing = Lists.newArrayList();
+        }
+        missing.add(name);
+      }
+    }
+    return missing;
+  }
+
+  private static String message(final DelegateExecution execution, final List<String> missing, final List<String> missingLocal) {
+    final StringBuilder message = new StringBuilder("Condition of task '").append(execution.getCurrentActivityId()).append("' is violated:");
+    if (missing != null) {
+      message.append(" Variables '").append(NAMES.join(missing)).append("' are not set.");
+    }
+    if (missingLocal != null) {
+      message.append(" Local variables '").append(NAMES.join(missingLocal)).append("' are not set.");
+    }
+    return message.toString();
+  }
+
+  /**
+   * Builder of the check.
+   */
+  public static class Builder {
+
+    private final Set<String> variables = Sets.newLinkedHashSet();
+    private final Set<String> localVariables = Sets.newLinkedHashSet();
+
+    /**
+     * Requires variables set in the local or any parent scope.
+     * 
+     * @param variableNames
+     *          names of the variables.
+     * @return builder.
+     */
+    public Builder isSet(final String... variableNames) {
+      return add(variables, variableNames);
+    }
+
+    /**
+     * Requires variables set in the local scope.
+     * 
+     * @param variableNames
+     *          names of the variables.
+     * @return builder.
+     */
+    public Builder isSetLocal(final String... variableNames) {
+      return add(localVariables, variableNames);
+    }
+
+    /**
+     * Compiles the check.
+     * 
+     * @return immutable check.
+     */
+    public VariableCheck build() {
+      if (variables.isEmpty() && localVariables.isEmpty()) {
+        return NONE;
+      }
+      return new VariableCheck(ImmutableList.copyOf(variables), ImmutableList.copyOf(localVariables));
+    }
+
+    private Builder add(final Set<String> target, final String... variableNames) {
+      for (final String variableName : variableNames) {
+        Preconditions.checkArgument(variableName != null, "Variable name must be not null");
+        target.add(variableName);
+      }
+      return this;
+    }
+  }
+}
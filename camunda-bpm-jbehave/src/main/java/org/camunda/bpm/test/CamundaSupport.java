@@ -1,59 +1,161 @@
 package org.camunda.bpm.test;
 
 import static com.google.common.base.Preconditions.checkArgument;
-import static org.camunda.bpm.engine.test.cfg.MostUsefulProcessEngineConfiguration.mostUsefulProcessEngineConfiguration;
+import static com.google.common.base.Preconditions.checkState;
 import static org.needle4j.injection.InjectionProviders.providerForInstance;
 
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.camunda.bpm.engine.ProcessEngine;
 import org.camunda.bpm.engine.RuntimeService;
+import org.camunda.bpm.engine.history.HistoricActivityInstance;
+import org.camunda.bpm.engine.history.HistoricProcessInstance;
+import org.camunda.bpm.engine.impl.interceptor.CommandExecutor;
 import org.camunda.bpm.engine.impl.util.ClockUtil;
 import org.camunda.bpm.engine.repository.DeploymentBuilder;
+import org.camunda.bpm.engine.repository.ProcessDefinition;
 import org.camunda.bpm.engine.runtime.ProcessInstance;
+import org.camunda.bpm.engine.task.Task;
 import org.camunda.bpm.engine.test.mock.Mocks;
+import org.camunda.bpm.util.ProcessEnginePlugins;
 import org.needle4j.injection.InjectionProvider;
 import org.needle4j.injection.InjectionTargetInformation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
 /**
- * Helper for Camunda access.
+ * Helper for Camunda access. <br />
+ * The support is shared by all stories, the state of a story (engine,
+ * deployments, started process instance) is confined to the thread running
+ * the story. This allows to run stories in parallel, each on its own engine
+ * borrowed from the {@link ProcessEnginePool}.
  * 
  * @author Simon Zambrovski, Holisticon AG
  */
 public class CamundaSupport implements InjectionProvider<CamundaSupport> {
 
+  /**
+   * Default number of process instances started in one transaction.
+   */
+  public static final int DEFAULT_BATCH_SIZE = 100;
+  /**
+   * Default limit of jobs executed by {@link #executeJobs()}.
+   */
+  public static final int DEFAULT_MAX_JOBS = 10000;
+  /**
+   * Number of process instance ids passed to one history query.
+   */
+  public static final int QUERY_CHUNK_SIZE = 1000;
+  /**
+   * Interval of database polls of engines without event trace.
+   */
+  public static final long POLL_INTERVAL_MILLIS = 50;
+  /**
+   * Time to wait for the rows still running, after a row run failed.
+   */
+  public static final long ROW_TERMINATION_SECONDS = 10;
+
   private final Logger logger = LoggerFactory.getLogger(CamundaSupport.class);
   private final InjectionProvider<CamundaSupport> injectionProviderDelegate = providerForInstance(this);
-  private final Set<String> deploymentIds = Sets.newHashSet();
+  private final ThreadLocal<StoryContext> context = new ThreadLocal<StoryContext>() {
+    @Override
+    protected StoryContext initialValue() {
+      return new StoryContext();
+    }
+  };
+  private final ConcurrentMap<String, StoryContext> fixtures = Maps.newConcurrentMap();
+  private final ProcessEngine sharedProcessEngine;
 
-  private ProcessEngine processEngine;
-  private ProcessInstance processInstance;
-  private Date startTime;
+  private volatile ProcessEngineProfile profile;
+  private volatile int batchSize = DEFAULT_BATCH_SIZE;
+  private volatile int jobWorkerThreads = Runtime.getRuntime().availableProcessors();
+  private volatile int maxJobs = DEFAULT_MAX_JOBS;
+  private volatile int rowThreads = Runtime.getRuntime().availableProcessors();
+  private volatile Boolean deploymentCacheEnabled;
+  private volatile boolean fastResetEnabled;
 
   /**
-   * Create support component with default process engine.
+   * Create support component with process engine of the selected
+   * {@link ProcessEngineProfile} borrowed from the {@link ProcessEnginePool}.
+   * The profile is resolved for every story, the engine is borrowed on first
+   * use.
    */
   public CamundaSupport() {
-    this(mostUsefulProcessEngineConfiguration().buildProcessEngine());
+    this((ProcessEngine) null);
+  }
+
+  /**
+   * Create support component with process engine of given profile borrowed
+   * from the {@link ProcessEnginePool} on first use.
+   * 
+   * @param profile
+   *          engine profile.
+   */
+  public CamundaSupport(final ProcessEngineProfile profile) {
+    this((ProcessEngine) null);
+    this.profile = profile;
   }
 
   /**
    * Create support component.
    * 
    * @param processEngine
-   *          process engine.
+   *          process engine, null to borrow pooled engines.
    */
   public CamundaSupport(final ProcessEngine processEngine) {
-    this.processEngine = processEngine;
+    this.sharedProcessEngine = processEngine;
     logger.debug("Camunda Support created.");
   }
 
+  private static ProcessEngine borrow(final ProcessEngineProfile profile) {
+    return ProcessEnginePool.borrow(profile.name(), profile);
+  }
+
+  /**
+   * Selects the engine profile for the story running on the current thread.
+   * Must be called before the story deploys. A pooled engine of another
+   * profile, already borrowed by the story, is returned to the pool.
+   * 
+   * @param storyProfile
+   *          profile of the story, null for the profile of the support.
+   */
+  public void useProfile(final ProcessEngineProfile storyProfile) {
+    final StoryContext story = context.get();
+    final ProcessEngineProfile requested = storyProfile != null ? storyProfile : defaultProfile();
+    if (story.processEngine != null && story.pooled && !requested.name().equals(ProcessEnginePool.keyOf(story.processEngine))) {
+      checkState(story.deploymentIds.isEmpty(), "Engine profile must be selected before deployment.");
+      ProcessEnginePool.release(story.processEngine);
+      story.processEngine = null;
+      story.pooled = false;
+    }
+    story.profile = storyProfile;
+  }
+
+  private ProcessEngineProfile defaultProfile() {
+    return profile != null ? profile : ProcessEngineProfile.selected();
+  }
+
+  private ProcessEngineProfile profileOf(final StoryContext story) {
+    return story.profile != null ? story.profile : defaultProfile();
+  }
+
   /**
    * Checks deployment of the process definition.
    * 
@@ -61,24 +163,216 @@ public class CamundaSupport implements InjectionProvider<CamundaSupport> {
    *          process definition file (BPMN)
    */
   public void deploy(final String... processModelResources) {
-    final DeploymentBuilder deploymentBuilder = this.processEngine.getRepositoryService().createDeployment();
-    for (final String resource : processModelResources) {
-      deploymentBuilder.addClasspathResource(resource);
+    final Set<String> deploymentIds = context.get().deploymentIds;
+    if (isDeploymentCached(getProcessEngine())) {
+      deploymentIds.add(DeploymentCache.forEngine(getProcessEngine()).deploy(processModelResources));
+    } else {
+      final DeploymentBuilder deploymentBuilder = getProcessEngine().getRepositoryService().createDeployment();
+      for (final String resource : processModelResources) {
+        deploymentBuilder.addClasspathResource(resource);
+      }
+      deploymentIds.add(deploymentBuilder.deploy().getId());
     }
-    this.deploymentIds.add(deploymentBuilder.deploy().getId());
     getStartTime();
   }
 
   /**
-   * Cleans up resources.
+   * Cleans up resources of the story running on the current thread. Cached
+   * deployments are kept, only their runtime and history data is removed. A
+   * pooled engine is reset and returned to the pool.
    */
   public void undeploy() {
-    for (final String deploymentId : deploymentIds) {
-      this.processEngine.getRepositoryService().deleteDeployment(deploymentId, true);
+    final StoryContext story = context.get();
+    if (story.processEngine != null) {
+      // only engines exclusively borrowed by the story are truncated
+      if (fastResetEnabled && story.pooled && ProcessEngineTruncation.isSupported(story.processEngine)) {
+        if (isDeploymentCached(story.processEngine)) {
+          ProcessEngineTruncation.truncateInstances(story.processEngine);
+        } else {
+          ProcessEngineTruncation.truncateAll(story.processEngine);
+        }
+      } else if (isDeploymentCached(story.processEngine)) {
+        deleteInstances(story.processEngine, story.deploymentIds);
+      } else {
+        for (final String deploymentId : story.deploymentIds) {
+          story.processEngine.getRepositoryService().deleteDeployment(deploymentId, true);
+        }
+      }
+      if (story.pooled) {
+        final VirtualClock clock = VirtualClockPlugin.clockOf(story.processEngine);
+        if (clock != null) {
+          clock.reset();
+        }
+        final ProcessEventTrace trace = ProcessEventPlugin.traceOf(story.processEngine);
+        if (trace != null) {
+          trace.clear();
+        }
+        final MockRegistry registry = MockRegistryPlugin.registryOf(story.processEngine);
+        if (registry != null) {
+          registry.reset();
+        }
+        ProcessEnginePool.release(story.processEngine);
+      }
     }
+    context.remove();
+    // mocks are held per thread
     Mocks.reset();
   }
 
+  /**
+   * Registers a mock or bean resolved by expressions of the engine used by the
+   * current story. Engines built without {@link MockRegistryPlugin} fall back
+   * to the thread bound {@link Mocks}.
+   * 
+   * @param name
+   *          name used in expressions.
+   * @param bean
+   *          mock or bean.
+   */
+  public void registerMock(final String name, final Object bean) {
+    final MockRegistry registry = MockRegistryPlugin.registryOf(getProcessEngine());
+    if (registry != null) {
+      registry.register(name, bean);
+    } else {
+      Mocks.register(name, bean);
+    }
+  }
+
+  /**
+   * Retrieves a mock or bean registered for the current story.
+   * 
+   * @param name
+   *          name of the bean.
+   * @return bean or null, if not registered.
+   */
+  public Object getMock(final String name) {
+    final MockRegistry registry = MockRegistryPlugin.registryOf(getProcessEngine());
+    final Object bean = registry != null ? registry.get(name) : null;
+    return bean != null ? bean : Mocks.get(name);
+  }
+
+  /**
+   * Enables or disables caching of deployments by content hash. By default,
+   * deployments are cached on pooled engines only. Enabled for other engines,
+   * cached deployments are kept on them across stories.
+   * 
+   * @param deploymentCacheEnabled
+   *          true, if unchanged models should be deployed only once per engine.
+   */
+  public void setDeploymentCacheEnabled(final boolean deploymentCacheEnabled) {
+    this.deploymentCacheEnabled = deploymentCacheEnabled;
+  }
+
+  private boolean isDeploymentCached(final ProcessEngine processEngine) {
+    final Boolean enabled = deploymentCacheEnabled;
+    return enabled != null ? enabled : ProcessEnginePool.isPooled(processEngine);
+  }
+
+  /**
+   * Enables or disables the fast reset of the engine after a story. If
+   * enabled, runtime, history and job data of the whole engine is removed by
+   * bulk deletion instead of cascading deletes (see
+   * {@link ProcessEngineTruncation}). Deployments are removed as well, if the
+   * deployment cache is disabled. Applies to pooled engines only, which are
+   * exclusively used by the story, other engines are cleaned by deletion.
+   * Disabled by default.
+   * 
+   * @param fastResetEnabled
+   *          true, if the engine should be reset by truncation of its tables.
+   */
+  public void setFastResetEnabled(final boolean fastResetEnabled) {
+    this.fastResetEnabled = fastResetEnabled;
+  }
+
+  /**
+   * Deletes runtime and history data of all process instances of given
+   * deployments, keeping the deployments.
+   * 
+   * @param processEngine
+   *          process engine.
+   * @param deploymentIds
+   *          deployments to clean.
+   */
+  static void deleteInstances(final ProcessEngine processEngine, final Set<String> deploymentIds) {
+    for (final String deploymentId : deploymentIds) {
+      for (final ProcessDefinition definition : processEngine.getRepositoryService().createProcessDefinitionQuery().deploymentId(deploymentId)
+          .list()) {
+        final RuntimeService runtimeService = processEngine.getRuntimeService();
+        for (final ProcessInstance instance : runtimeService.createProcessInstanceQuery().processDefinitionId(definition.getId()).list()) {
+          // sub process instances may already be deleted with their parent
+          if (runtimeService.createProcessInstanceQuery().processInstanceId(instance.getId()).count() > 0) {
+            runtimeService.deleteProcessInstance(instance.getId(), "story finished");
+          }
+        }
+        for (final HistoricProcessInstance instance : processEngine.getHistoryService().createHistoricProcessInstanceQuery()
+            .processDefinitionId(definition.getId()).list()) {
+          processEngine.getHistoryService().deleteHistoricProcessInstance(instance.getId());
+        }
+      }
+    }
+  }
+
+  /**
+   * Saves the state of the engine and the story under the fixture name. The
+   * engine database (H2 only), the virtual clock, the deployment cache and the
+   * registered mocks are captured. The fixture can be restored by later
+   * scenarios running on the same engine or on any pooled engine of the same
+   * profile.
+   * 
+   * @param fixtureName
+   *          name of the fixture.
+   */
+  public void saveFixture(final String fixtureName) {
+    final StoryContext story = context.get();
+    final StoryContext fixture = new StoryContext();
+    story.copyTo(fixture);
+    fixture.snapshot = ProcessEngineSnapshot.take(getProcessEngine());
+    fixtures.put(fixtureKey(fixtureName), fixture);
+    logger.debug("Fixture {} saved.", fixtureName);
+  }
+
+  /**
+   * Restores the fixture saved on the engine of the current story or on a
+   * pooled engine of the same profile.
+   * 
+   * @param fixtureName
+   *          name of the fixture.
+   * @return true, if the fixture has been restored, false if it has not been
+   *         saved for this engine yet.
+   */
+  public boolean restoreFixture(final String fixtureName) {
+    final StoryContext fixture = fixtures.get(fixtureKey(fixtureName));
+    if (fixture == null || !fixture.snapshot.isRestorableTo(getProcessEngine())) {
+      return false;
+    }
+    fixture.snapshot.restore(getProcessEngine());
+    fixture.copyTo(context.get());
+    logger.debug("Fixture {} restored.", fixtureName);
+    return true;
+  }
+
+  /**
+   * Restores the fixture or creates and saves it, if not saved yet.
+   * 
+   * @param fixtureName
+   *          name of the fixture.
+   * @param setup
+   *          setup of the fixture, executed once per engine profile.
+   */
+  public void fixture(final String fixtureName, final Runnable setup) {
+    if (!restoreFixture(fixtureName)) {
+      setup.run();
+      saveFixture(fixtureName);
+    }
+  }
+
+  private String fixtureKey(final String fixtureName) {
+    checkArgument(fixtureName != null, "fixtureName must not be null!");
+    // pooled engines of a profile share fixtures, other engines keep their own
+    final String profileKey = ProcessEnginePool.keyOf(getProcessEngine());
+    return (profileKey != null ? "profile:" + profileKey : "engine:" + getProcessEngine().getName()) + "/" + fixtureName;
+  }
+
   /**
    * Starts process by process definition key with given payload.
    * 
@@ -91,7 +385,10 @@ public class CamundaSupport implements InjectionProvider<CamundaSupport> {
    */
   public ProcessInstance startProcessInstanceByKey(final String processDefinitionKey, final Map<String, Object> variables) {
     checkArgument(processDefinitionKey != null, "processDefinitionKey must not be null!");
-    this.processInstance = this.processEngine.getRuntimeService().startProcessInstanceByKey(processDefinitionKey, variables);
+    final ProcessInstance processInstance = getProcessEngine().getRuntimeService().startProcessInstanceByKey(processDefinitionKey, variables);
+    final StoryContext story = context.get();
+    story.processInstances.register(processInstance, null);
+    story.processInstance = processInstance;
     return processInstance;
   }
 
@@ -107,38 +404,718 @@ public class CamundaSupport implements InjectionProvider<CamundaSupport> {
   }
 
   /**
-   * Retrieves the process instance.
+   * Starts process instances by process definition key, one per variable map.
+   * The instances are started in batches of {@link #setBatchSize(int)}
+   * instances, every batch in one transaction.
+   * 
+   * @param processDefinitionKey
+   *          process definition key.
+   * @param variables
+   *          initial payload variables, one map (or null) per instance.
+   * @return started process instances, in order of the variable maps.
+   */
+  public List<ProcessInstance> startProcessInstancesByKey(final String processDefinitionKey, final List<Map<String, Object>> variables) {
+    return startProcessInstancesByKey(processDefinitionKey, variables, batchSize);
+  }
+
+  /**
+   * Starts process instances by process definition key, one per variable map.
+   * 
+   * @param processDefinitionKey
+   *          process definition key.
+   * @param variables
+   *          initial payload variables, one map (or null) per instance.
+   * @param batchSize
+   *          number of instances started in one transaction.
+   * @return started process instances, in order of the variable maps.
+   */
+  public List<ProcessInstance> startProcessInstancesByKey(final String processDefinitionKey, final List<Map<String, Object>> variables,
+      final int batchSize) {
+    return startProcessInstancesByKey(processDefinitionKey, variables, batchSize, null);
+  }
+
+  /**
+   * Starts process instances by process definition key, one per variable map,
+   * and adds them to a group of the {@link ProcessInstanceRegistry}.
+   * 
+   * @param processDefinitionKey
+   *          process definition key.
+   * @param variables
+   *          initial payload variables, one map (or null) per instance.
+   * @param batchSize
+   *          number of instances started in one transaction.
+   * @param group
+   *          name of the group, may be null.
+   * @return started process instances, in order of the variable maps.
+   */
+  public List<ProcessInstance> startProcessInstancesByKey(final String processDefinitionKey, final List<Map<String, Object>> variables,
+      final int batchSize, final String group) {
+    checkArgument(processDefinitionKey != null, "processDefinitionKey must not be null!");
+    checkArgument(variables != null, "variables must not be null!");
+    checkArgument(batchSize > 0, "batchSize must be positive!");
+
+    final ProcessEngine processEngine = getProcessEngine();
+    final CommandExecutor commandExecutor = ProcessEnginePlugins.configuration(processEngine).getCommandExecutorTxRequired();
+    final List<ProcessInstance> instances = Lists.newArrayListWithCapacity(variables.size());
+    for (final List<Map<String, Object>> batch : Lists.partition(variables, batchSize)) {
+      instances.addAll(commandExecutor.execute(new StartProcessInstancesCmd(processEngine.getRuntimeService(), processDefinitionKey, batch)));
+    }
+
+    final StoryContext story = context.get();
+    story.processInstances.register(instances, group);
+    if (!instances.isEmpty()) {
+      story.processInstance = instances.get(instances.size() - 1);
+    }
+    logger.debug("Started {} instances of {}.", instances.size(), processDefinitionKey);
+    return instances;
+  }
+
+  /**
+   * Starts given number of process instances without variables.
+   * 
+   * @param processDefinitionKey
+   *          process definition key.
+   * @param count
+   *          number of instances to start.
+   * @return started process instances.
+   */
+  public List<ProcessInstance> startProcessInstancesByKey(final String processDefinitionKey, final int count) {
+    checkArgument(count >= 0, "count must not be negative!");
+    return startProcessInstancesByKey(processDefinitionKey, Collections.<Map<String, Object>> nCopies(count, null));
+  }
+
+  /**
+   * Starts given number of process instances without variables and adds them
+   * to a group of the {@link ProcessInstanceRegistry}.
+   * 
+   * @param processDefinitionKey
+   *          process definition key.
+   * @param count
+   *          number of instances to start.
+   * @param group
+   *          name of the group.
+   * @return started process instances.
+   */
+  public List<ProcessInstance> startProcessInstancesByKey(final String processDefinitionKey, final int count, final String group) {
+    checkArgument(count >= 0, "count must not be negative!");
+    return startProcessInstancesByKey(processDefinitionKey, Collections.<Map<String, Object>> nCopies(count, null), batchSize, group);
+  }
+
+  /**
+   * Retrieves all process instances started by the story running on the
+   * current thread.
+   * 
+   * @return started process instances, in start order.
+   */
+  public List<ProcessInstance> getProcessInstances() {
+    return context.get().processInstances.getAll();
+  }
+
+  /**
+   * Retrieves the registry of the process instances started by the story
+   * running on the current thread.
+   * 
+   * @return registry of the story.
+   */
+  public ProcessInstanceRegistry getProcessInstanceRegistry() {
+    return context.get().processInstances;
+  }
+
+  /**
+   * Makes the process instance with given alias the current process instance,
+   * targeted by the single instance operations.
+   * 
+   * @param alias
+   *          alias of the instance.
+   * @return selected process instance.
+   */
+  public ProcessInstance selectProcessInstance(final String alias) {
+    final StoryContext story = context.get();
+    final ProcessInstance processInstance = story.processInstances.get(alias);
+    checkArgument(processInstance != null, "No process instance registered as %s.", alias);
+    story.processInstance = processInstance;
+    return processInstance;
+  }
+
+  /**
+   * Counts the finished process instances. Uses the event trace of the engine,
+   * if available, otherwise one history query per
+   * {@value #QUERY_CHUNK_SIZE} instances.
+   * 
+   * @param processInstances
+   *          process instances to check.
+   * @return number of finished instances.
+   */
+  public int countFinished(final List<ProcessInstance> processInstances) {
+    final ProcessEngine processEngine = getProcessEngine();
+    final ProcessEventTrace trace = ProcessEventPlugin.traceOf(processEngine);
+    int finished = 0;
+    if (trace != null) {
+      for (final ProcessInstance processInstance : processInstances) {
+        if (trace.isEnded(processInstance.getId())) {
+          finished++;
+        }
+      }
+    } else {
+      for (final List<ProcessInstance> chunk : Lists.partition(processInstances, QUERY_CHUNK_SIZE)) {
+        finished += processEngine.getHistoryService().createHistoricProcessInstanceQuery().processInstanceIds(idsOf(chunk)).finished().count();
+      }
+    }
+    return finished;
+  }
+
+  /**
+   * Counts the process instances having passed the activity. Uses the event
+   * trace of the engine, if available, otherwise one history query per
+   * process definition.
+   * 
+   * @param processInstances
+   *          process instances to check.
+   * @param activityId
+   *          activity id.
+   * @return number of instances having passed the activity.
+   */
+  public int countPassed(final List<ProcessInstance> processInstances, final String activityId) {
+    checkArgument(activityId != null, "activityId must not be null!");
+    final ProcessEngine processEngine = getProcessEngine();
+    final ProcessEventTrace trace = ProcessEventPlugin.traceOf(processEngine);
+    int passed = 0;
+    if (trace != null) {
+      for (final ProcessInstance processInstance : processInstances) {
+        if (trace.hasPassed(processInstance.getId(), activityId)) {
+          passed++;
+        }
+      }
+    } else {
+      final Set<String> ids = idsOf(processInstances);
+      final Set<String> definitionIds = Sets.newHashSet();
+      for (final ProcessInstance processInstance : processInstances) {
+        definitionIds.add(processInstance.getProcessDefinitionId());
+      }
+      final Set<String> passedIds = Sets.newHashSet();
+      for (final String definitionId : definitionIds) {
+        for (final HistoricActivityInstance activity : processEngine.getHistoryService().createHistoricActivityInstanceQuery()
+            .processDefinitionId(definitionId).activityId(activityId).finished().list()) {
+          if (ids.contains(activity.getProcessInstanceId())) {
+            passedIds.add(activity.getProcessInstanceId());
+          }
+        }
+      }
+      passed = passedIds.size();
+    }
+    return passed;
+  }
+
+  /**
+   * Retrieves the open tasks of the current process instance. Uses the event
+   * trace of the engine, if available, otherwise a task query.
+   * 
+   * @return ids of the open tasks.
+   */
+  public List<String> getOpenTasks() {
+    checkState(hasRunningProcessInstance(), "No process instance started.");
+    final String processInstanceId = getProcessInstance().getId();
+    final ProcessEventTrace trace = ProcessEventPlugin.traceOf(getProcessEngine());
+    if (trace != null) {
+      return trace.getOpenTasks(processInstanceId);
+    }
+    final List<String> taskIds = Lists.newArrayList();
+    for (final Task task : getProcessEngine().getTaskService().createTaskQuery().processInstanceId(processInstanceId).list()) {
+      taskIds.add(task.getId());
+    }
+    return taskIds;
+  }
+
+  /**
+   * Completes the only open task of the current process instance.
+   * 
+   * @param variables
+   *          variables to pass, may be null.
+   */
+  public void completeTask(final Map<String, Object> variables) {
+    final List<String> taskIds = getOpenTasks();
+    checkState(taskIds.size() == 1, "Expected one open task of process instance %s, but found %s.", getProcessInstance().getId(), taskIds.size());
+    getProcessEngine().getTaskService().complete(taskIds.get(0), variables);
+  }
+
+  /**
+   * Completes the open tasks with given definition key of all process
+   * instances registered by the current story. The tasks are completed in
+   * batches of {@link #setBatchSize(int)} tasks, every batch in one
+   * transaction.
+   * 
+   * @param taskDefinitionKey
+   *          task definition key.
+   * @param variables
+   *          variables passed to every task, may be null.
+   * @return number of completed tasks.
+   */
+  public int completeTasks(final String taskDefinitionKey, final Map<String, Object> variables) {
+    return completeTasks(taskDefinitionKey, variables, batchSize);
+  }
+
+  /**
+   * Completes the open tasks with given definition key of all process
+   * instances registered by the current story.
+   * 
+   * @param taskDefinitionKey
+   *          task definition key.
+   * @param variables
+   *          variables passed to every task, may be null.
+   * @param batchSize
+   *          number of tasks completed in one transaction.
+   * @return number of completed tasks.
+   */
+  public int completeTasks(final String taskDefinitionKey, final Map<String, Object> variables, final int batchSize) {
+    checkArgument(taskDefinitionKey != null, "taskDefinitionKey must not be null!");
+    checkArgument(batchSize > 0, "batchSize must be positive!");
+
+    final ProcessEngine processEngine = getProcessEngine();
+    final List<ProcessInstance> instances = getProcessInstances();
+    final ProcessEventTrace trace = ProcessEventPlugin.traceOf(processEngine);
+    final List<String> taskIds = Lists.newArrayList();
+    if (trace != null) {
+      for (final ProcessInstance instance : instances) {
+        taskIds.addAll(trace.getOpenTasks(instance.getId(), taskDefinitionKey));
+      }
+    } else {
+      final Set<String> ids = idsOf(instances);
+      for (final Task task : processEngine.getTaskService().createTaskQuery().taskDefinitionKey(taskDefinitionKey).list()) {
+        if (ids.contains(task.getProcessInstanceId())) {
+          taskIds.add(task.getId());
+        }
+      }
+    }
+
+    final CommandExecutor commandExecutor = ProcessEnginePlugins.configuration(processEngine).getCommandExecutorTxRequired();
+    int completed = 0;
+    for (final List<String> batch : Lists.partition(taskIds, batchSize)) {
+      completed += commandExecutor.execute(new CompleteTasksCmd(processEngine.getTaskService(), batch, variables));
+    }
+    logger.debug("Completed {} tasks {}.", completed, taskDefinitionKey);
+    return completed;
+  }
+
+  private static Set<String> idsOf(final List<ProcessInstance> processInstances) {
+    final Set<String> ids = Sets.newHashSetWithExpectedSize(processInstances.size());
+    for (final ProcessInstance processInstance : processInstances) {
+      ids.add(processInstance.getId());
+    }
+    return ids;
+  }
+
+  /**
+   * Sets the number of instances started in one transaction by
+   * {@link #startProcessInstancesByKey(String, List)}. Defaults to
+   * {@value #DEFAULT_BATCH_SIZE}.
+   * 
+   * @param batchSize
+   *          number of instances per transaction.
+   */
+  public void setBatchSize(final int batchSize) {
+    checkArgument(batchSize > 0, "batchSize must be positive!");
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Executes all pending jobs of the engine used by the current story, until
+   * no executable job remains or {@link #setMaxJobs(int)} jobs have been
+   * executed.
+   * 
+   * @return statistics of the job execution.
+   * @see JobDrain
+   */
+  public JobDrain.Result executeJobs() {
+    return new JobDrain(getProcessEngine(), jobWorkerThreads, maxJobs).execute();
+  }
+
+  /**
+   * Sets the number of worker threads used by {@link #executeJobs()}. Defaults
+   * to the number of processors.
+   * 
+   * @param jobWorkerThreads
+   *          number of threads.
+   */
+  public void setJobWorkerThreads(final int jobWorkerThreads) {
+    checkArgument(jobWorkerThreads > 0, "jobWorkerThreads must be positive!");
+    this.jobWorkerThreads = jobWorkerThreads;
+  }
+
+  /**
+   * Sets the limit of jobs executed by {@link #executeJobs()}. Defaults to
+   * {@value #DEFAULT_MAX_JOBS}.
+   * 
+   * @param maxJobs
+   *          maximum number of jobs.
+   */
+  public void setMaxJobs(final int maxJobs) {
+    checkArgument(maxJobs > 0, "maxJobs must be positive!");
+    this.maxJobs = maxJobs;
+  }
+
+  /**
+   * Runs the rows concurrently on the engine of the current story. Every row
+   * runs with its own isolated context: the deployments and the start time of
+   * the story are visible, process instances started by a row are not visible
+   * to other rows. After all rows finished, the process instances started by
+   * the rows are merged into the story context in row order. If a row fails,
+   * the running rows are interrupted and only the finished rows are merged.
+   * Deployments share the {@link DeploymentCache}, so rows deploying the same
+   * model use one deployment.
+   * 
+   * @param rows
+   *          rows to run, e.g. the rows of an examples table.
+   * @param task
+   *          task run for each row, may use this support.
+   * @return results in row order.
+   */
+  public <T, R> List<RowResult<R>> runRows(final List<T> rows, final Function<? super T, R> task) {
+    return runRows(rows, task, rowThreads);
+  }
+
+  /**
+   * Runs the rows concurrently on given number of threads.
+   * 
+   * @param rows
+   *          rows to run.
+   * @param task
+   *          task run for each row, may use this support.
+   * @param threads
+   *          number of threads.
+   * @return results in row order.
+   * @see #runRows(List, Function)
+   */
+  public <T, R> List<RowResult<R>> runRows(final List<T> rows, final Function<? super T, R> task, final int threads) {
+    checkArgument(rows != null, "rows must not be null!");
+    checkArgument(task != null, "task must not be null!");
+    checkArgument(threads > 0, "threads must be positive!");
+
+    final StoryContext story = context.get();
+    getProcessEngine();
+    getStartTime();
+    final Map<String, Object> mocks = Mocks.getMocks() != null ? ImmutableMap.copyOf(Mocks.getMocks()) : ImmutableMap.<String, Object> of();
+    final List<StoryContext> rowContexts = Lists.newArrayListWithCapacity(rows.size());
+    final List<Future<RowResult<R>>> futures = Lists.newArrayListWithCapacity(rows.size());
+    final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, rows.size())));
+    try {
+      for (int i = 0; i < rows.size(); i++) {
+        final StoryContext row = new StoryContext();
+        row.processEngine = story.processEngine;
+        row.profile = story.profile;
+        row.startTime = story.startTime;
+        row.deploymentIds.addAll(story.deploymentIds);
+        rowContexts.add(row);
+        futures.add(executor.submit(new RunRow<T, R>(i, rows.get(i), task, row, mocks)));
+      }
+      final List<RowResult<R>> results = Lists.newArrayListWithCapacity(rows.size());
+      for (final Future<RowResult<R>> future : futures) {
+        results.add(future.get());
+      }
+      return results;
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while running rows", e);
+    } catch (final ExecutionException e) {
+      throw new IllegalStateException("Row execution failed", e.getCause());
+    } finally {
+      executor.shutdownNow();
+      awaitTermination(executor);
+      // merge finished rows in row order
+      for (int i = 0; i < futures.size(); i++) {
+        if (!futures.get(i).isDone()) {
+          continue;
+        }
+        final StoryContext row = rowContexts.get(i);
+        story.deploymentIds.addAll(row.deploymentIds);
+        row.processInstances.addTo(story.processInstances);
+        if (row.processInstance != null) {
+          story.processInstance = row.processInstance;
+        }
+      }
+    }
+  }
+
+  /**
+   * Waits for the interrupted rows, so their contexts are not merged while
+   * they are modified.
+   */
+  private void awaitTermination(final ExecutorService executor) {
+    try {
+      if (!executor.awaitTermination(ROW_TERMINATION_SECONDS, TimeUnit.SECONDS)) {
+        logger.warn("Rows still running after {} seconds are not merged into the story", ROW_TERMINATION_SECONDS);
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Sets the number of threads used by {@link #runRows(List, Function)}.
+   * Defaults to the number of processors.
+   * 
+   * @param rowThreads
+   *          number of threads.
+   */
+  public void setRowThreads(final int rowThreads) {
+    checkArgument(rowThreads > 0, "rowThreads must be positive!");
+    this.rowThreads = rowThreads;
+  }
+
+  /**
+   * Run of one row on a worker thread, with the row context bound to the
+   * thread.
+   */
+  private class RunRow<T, R> implements Callable<RowResult<R>> {
+
+    private final int index;
+    private final T row;
+    private final Function<? super T, R> task;
+    private final StoryContext rowContext;
+    private final Map<String, Object> mocks;
+
+    RunRow(final int index, final T row, final Function<? super T, R> task, final StoryContext rowContext, final Map<String, Object> mocks) {
+      this.index = index;
+      this.row = row;
+      this.task = task;
+      this.rowContext = rowContext;
+      this.mocks = mocks;
+    }
+
+    @Override
+    public RowResult<R> call() {
+      context.set(rowContext);
+      for (final Map.Entry<String, Object> mock : mocks.entrySet()) {
+        Mocks.register(mock.getKey(), mock.getValue());
+      }
+      try {
+        return new RowResult<R>(index, task.apply(row), null);
+      } catch (final RuntimeException e) {
+        return new RowResult<R>(index, null, e);
+      } catch (final AssertionError e) {
+        return new RowResult<R>(index, null, e);
+      } finally {
+        Mocks.reset();
+        context.remove();
+      }
+    }
+  }
+
+  /**
+   * Waits until the current process instance enters the activity, without
+   * polling the database. Returns early, if the process instance ends.
+   * 
+   * @param activityId
+   *          activity to wait for.
+   * @param timeout
+   *          maximum time to wait.
+   * @param unit
+   *          unit of the timeout.
+   * @return true, if the activity has been entered and not yet left. Null, if
+   *         the engine has no event trace, see
+   *         {@link #pollActivity(String, long, TimeUnit)}.
+   */
+  public Boolean awaitActivity(final String activityId, final long timeout, final TimeUnit unit) {
+    checkState(hasRunningProcessInstance(), "No process instance started.");
+    final ProcessEventTrace trace = ProcessEventPlugin.traceOf(getProcessEngine());
+    if (trace == null) {
+      return null;
+    }
+    try {
+      return trace.awaitActivity(getProcessInstance().getId(), activityId, timeout, unit);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return Boolean.FALSE;
+    }
+  }
+
+  /**
+   * Waits until the current process instance ends, without polling the
+   * database.
+   * 
+   * @param timeout
+   *          maximum time to wait.
+   * @param unit
+   *          unit of the timeout.
+   * @return true, if the process instance ended. Null, if the engine has no
+   *         event trace, see {@link #pollProcessEnd(long, TimeUnit)}.
+   */
+  public Boolean awaitProcessEnd(final long timeout, final TimeUnit unit) {
+    checkState(hasRunningProcessInstance(), "No process instance started.");
+    final ProcessEventTrace trace = ProcessEventPlugin.traceOf(getProcessEngine());
+    if (trace == null) {
+      return null;
+    }
+    try {
+      return trace.awaitEnd(getProcessInstance().getId(), timeout, unit);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return Boolean.FALSE;
+    }
+  }
+
+  /**
+   * Polls the database until the current process instance waits at the
+   * activity or ends. Used for engines without event trace.
+   * 
+   * @param activityId
+   *          activity to wait for.
+   * @param timeout
+   *          maximum time to wait.
+   * @param unit
+   *          unit of the timeout.
+   * @return true, if the process instance waits at the activity.
+   */
+  public boolean pollActivity(final String activityId, final long timeout, final TimeUnit unit) {
+    checkState(hasRunningProcessInstance(), "No process instance started.");
+    final String processInstanceId = getProcessInstance().getId();
+    final RuntimeService runtimeService = getProcessEngine().getRuntimeService();
+    final long deadline = System.nanoTime() + unit.toNanos(timeout);
+    while (true) {
+      if (runtimeService.createExecutionQuery().processInstanceId(processInstanceId).activityId(activityId).count() > 0) {
+        return true;
+      }
+      if (runtimeService.createProcessInstanceQuery().processInstanceId(processInstanceId).count() == 0 || !pause(deadline)) {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Polls the database until the current process instance ends. Used for
+   * engines without event trace.
+   * 
+   * @param timeout
+   *          maximum time to wait.
+   * @param unit
+   *          unit of the timeout.
+   * @return true, if the process instance ended.
+   */
+  public boolean pollProcessEnd(final long timeout, final TimeUnit unit) {
+    checkState(hasRunningProcessInstance(), "No process instance started.");
+    final String processInstanceId = getProcessInstance().getId();
+    final RuntimeService runtimeService = getProcessEngine().getRuntimeService();
+    final long deadline = System.nanoTime() + unit.toNanos(timeout);
+    while (true) {
+      if (runtimeService.createProcessInstanceQuery().processInstanceId(processInstanceId).count() == 0) {
+        return true;
+      }
+      if (!pause(deadline)) {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Sleeps for the poll interval, at most until the deadline.
+   * 
+   * @return false, if the deadline has passed or the thread was interrupted.
+   */
+  private static boolean pause(final long deadline) {
+    final long remaining = deadline - System.nanoTime();
+    if (remaining <= 0) {
+      return false;
+    }
+    try {
+      TimeUnit.NANOSECONDS.sleep(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(POLL_INTERVAL_MILLIS)));
+      return true;
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  /**
+   * Checks if the current process instance has passed the activity, using the
+   * in-memory event trace of the engine.
+   * 
+   * @param activityId
+   *          activity id.
+   * @return true, if passed. Null, if the engine has no event trace.
+   */
+  public Boolean hasPassed(final String activityId) {
+    checkState(hasRunningProcessInstance(), "No process instance started.");
+    final ProcessEventTrace trace = ProcessEventPlugin.traceOf(getProcessEngine());
+    return trace != null ? Boolean.valueOf(trace.hasPassed(getProcessInstance().getId(), activityId)) : null;
+  }
+
+  /**
+   * Checks if the current process instance has ended, using the in-memory
+   * event trace of the engine.
+   * 
+   * @return true, if ended. Null, if the engine has no event trace.
+   */
+  public Boolean isEnded() {
+    checkState(hasRunningProcessInstance(), "No process instance started.");
+    final ProcessEventTrace trace = ProcessEventPlugin.traceOf(getProcessEngine());
+    return trace != null ? Boolean.valueOf(trace.isEnded(getProcessInstance().getId())) : null;
+  }
+
+  /**
+   * Retrieves the process instance started by the story running on the
+   * current thread.
    * 
    * @return running process instance.
    */
   public ProcessInstance getProcessInstance() {
-    return processInstance;
+    return context.get().processInstance;
   }
 
   /**
-   * Sets time.
+   * Sets time of the engine used by the current story. Engines built without
+   * {@link VirtualClockPlugin} fall back to the JVM-wide {@link ClockUtil}.
    * 
    * @param currentTime
    *          sets current time in the engine
    */
   public void setCurrentTime(final Date currentTime) {
-    ClockUtil.setCurrentTime(currentTime);
+    final VirtualClock clock = VirtualClockPlugin.clockOf(getProcessEngine());
+    if (clock != null) {
+      clock.setCurrentTime(currentTime);
+    } else {
+      ClockUtil.setCurrentTime(currentTime);
+    }
+  }
+
+  /**
+   * Retrieves current time of the engine used by the current story.
+   * 
+   * @return current engine time.
+   */
+  public Date getCurrentTime() {
+    final VirtualClock clock = VirtualClockPlugin.clockOf(getProcessEngine());
+    return clock != null ? clock.getCurrentTime() : ClockUtil.getCurrentTime();
   }
 
   /**
    * Resets process engine clock.
    */
   public void resetClock() {
-    ClockUtil.reset();
+    final VirtualClock clock = VirtualClockPlugin.clockOf(getProcessEngine());
+    if (clock != null) {
+      clock.reset();
+    } else {
+      ClockUtil.reset();
+    }
   }
 
   /**
-   * Retrieves process engine.
+   * Retrieves process engine of the story running on the current thread. A
+   * pooled engine of the selected profile is borrowed on first access, so
+   * stories running in parallel work on different engines.
    * 
    * @return process engine.
    */
   public ProcessEngine getProcessEngine() {
-    return processEngine;
+    final StoryContext story = context.get();
+    if (story.processEngine == null) {
+      if (sharedProcessEngine != null) {
+        story.processEngine = sharedProcessEngine;
+      } else {
+        story.processEngine = borrow(profileOf(story));
+        story.pooled = true;
+      }
+    }
+    return story.processEngine;
   }
 
   /**
@@ -147,10 +1124,11 @@ public class CamundaSupport implements InjectionProvider<CamundaSupport> {
    * @return time of deployment.
    */
   public Date getStartTime() {
-    if (this.startTime == null) {
-      this.startTime = new Date();
+    final StoryContext story = context.get();
+    if (story.startTime == null) {
+      story.startTime = new Date();
     }
-    return this.startTime;
+    return story.startTime;
   }
 
   /**
@@ -0,0 +1,45 @@
+package org.camunda.bpm.test;
+
+import java.util.List;
+import java.util.Map;
+
+import org.camunda.bpm.engine.TaskService;
+import org.camunda.bpm.engine.impl.interceptor.Command;
+import org.camunda.bpm.engine.impl.interceptor.CommandContext;
+
+/**
+ * Completes several tasks in one command and thus in one transaction. The
+ * service calls reuse the command context of this command.
+ *
+ * @author Simon Zambrovski, Holisticon AG
+ */
+class CompleteTasksCmd implements Command<Integer> {
+
+  private final TaskService taskService;
+  private final List<String> taskIds;
+  private final Map<String, Object> variables;
+
+  /**
+   * Creates the command.
+   *
+   * @param taskService
+   *          task service of the engine executing the command.
+   * @param taskIds
+   *          ids of the tasks to complete.
+   * @param variables
+   *          variables passed on completion of every task, may be null.
+   */
+  CompleteTasksCmd(final TaskService taskService, final List<String> taskIds, final Map<String, Object> variables) {
+    this.taskService = taskService;
+    this.taskIds = taskIds;
+    this.variables = variables;
+  }
+
+  @Override
+  public Integer execute(final CommandContext commandContext) {
+    for (final String taskId : taskIds) {
+      taskService.complete(taskId, variables);
+    }
+    return taskIds.size();
+  }
+}
@@ -0,0 +1,164 @@
+package org.camunda.bpm.test;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import org.camunda.bpm.engine.ProcessEngine;
+import org.camunda.bpm.engine.repository.DeploymentBuilder;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.io.Resources;
+
+/**
+ * Cache of deployments of a process engine, keyed by the hash of the deployed
+ * resources. <br />
+ * Unchanged models are deployed once per engine and reused by later stories.
+ *
+ * @author Simon Zambrovski, Holisticon AG
+ */
+public final class DeploymentCache {
+
+  private static final ConcurrentMap<String, DeploymentCache> CACHES = Maps.newConcurrentMap();
+
+  private final ConcurrentMap<String, String> deployments = Maps.newConcurrentMap();
+  private final ProcessEngine processEngine;
+
+  private DeploymentCache(final ProcessEngine processEngine) {
+    this.processEngine = processEngine;
+  }
+
+  /**
+   * Retrieves the deployment cache of the engine.
+   *
+   * @param processEngine
+   *          process engine.
+   * @return cache of the engine.
+   */
+  public static DeploymentCache forEngine(final ProcessEngine processEngine) {
+    checkArgument(processEngine != null, "processEngine must not be null!");
+    final String name = processEngine.getName();
+    DeploymentCache cache = CACHES.get(name);
+    while (cache == null || cache.processEngine != processEngine) {
+      // keep the cache of a concurrent caller, replace the one of a closed
+      // engine with the same name
+      final DeploymentCache created = new DeploymentCache(processEngine);
+      if (cache == null ? CACHES.putIfAbsent(name, created) == null : CACHES.replace(name, cache, created)) {
+        return created;
+      }
+      cache = CACHES.get(name);
+    }
+    return cache;
+  }
+
+  /**
+   * Deploys the resources, if no deployment with the same content exists.
+   *
+   * @param resources
+   *          classpath resources to deploy.
+   * @return id of the new or the cached deployment.
+   */
+  public String deploy(final String... resources) {
+    final String hash = hash(resources);
+    final String cached = deployments.get(hash);
+    if (cached != null) {
+      return cached;
+    }
+    synchronized (this) {
+      String deploymentId = deployments.get(hash);
+      if (deploymentId == null) {
+        final DeploymentBuilder deploymentBuilder = processEngine.getRepositoryService().createDeployment();
+        for (final String resource : resources) {
+          deploymentBuilder.addClasspathResource(resource);
+        }
+        deploymentId = deploymentBuilder.deploy().getId();
+        deployments.put(hash, deploymentId);
+      }
+      return deploymentId;
+    }
+  }
+
+  /**
+   * Retrieves ids of all cached deployments.
+   *
+   * @return deployment ids.
+   */
+  public Collection<String> getDeploymentIds() {
+    return ImmutableSet.copyOf(deployments.values());
+  }
+
+  /**
+   * Deletes all cached deployments including their instances.
+   */
+  public synchronized void clear() {
+    for (final String deploymentId : deployments.values()) {
+      processEngine.getRepositoryService().deleteDeployment(deploymentId, true);
+    }
+    deployments.clear();
+  }
+
+  /**
+   * Forgets all cached deployments without touching the engine. Used if the
+   * deployments have been removed from the database by other means.
+   */
+  public void invalidate() {
+    deployments.clear();
+  }
+
+  /**
+   * Copies the cache content.
+   *
+   * @return map from content hash to deployment id.
+   */
+  Map<String, String> snapshot() {
+    return ImmutableMap.copyOf(deployments);
+  }
+
+  /**
+   * Replaces the cache content, after the engine database has been restored.
+   *
+   * @param snapshot
+   *          map from content hash to deployment id.
+   */
+  synchronized void restore(final Map<String, String> snapshot) {
+    deployments.clear();
+    deployments.putAll(snapshot);
+  }
+
+  /**
+   * Computes the hash of the resource names and contents. Every name is
+   * followed by a separator and the content length, so different
+   * name/content pairs never produce the same input.
+   *
+   * @param resources
+   *          classpath resources.
+   * @return hex encoded hash.
+   */
+  static String hash(final String... resources) {
+    try {
+      final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      for (final String resource : resources) {
+        final byte[] content = Resources.toByteArray(Resources.getResource(resource));
+        digest.update(resource.getBytes(Charsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(String.valueOf(content.length).getBytes(Charsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(content);
+      }
+      return new BigInteger(1, digest.digest()).toString(16);
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-1 is not supported", e);
+    } catch (final IOException e) {
+      throw new IllegalArgumentException("Could not read resources " + ImmutableSet.copyOf(resources), e);
+    }
+  }
+}
@@ -0,0 +1,182 @@
+package org.camunda.bpm.test;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.camunda.bpm.engine.ManagementService;
+import org.camunda.bpm.engine.ProcessEngine;
+import org.camunda.bpm.engine.runtime.Job;
+import org.camunda.bpm.engine.test.mock.Mocks;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+/**
+ * Synchronous execution of all pending jobs of an engine. <br />
+ * The executable jobs are fetched and executed by a pool of worker threads,
+ * repeatedly, until no executable jobs remain or the limit of executed jobs is
+ * reached. Failed jobs are counted and left to the retry handling of the
+ * engine. Mocks registered on the calling thread are visible to the workers.
+ *
+ * @author Simon Zambrovski, Holisticon AG
+ */
+public class JobDrain {
+
+  private static final Logger LOG = LoggerFactory.getLogger(JobDrain.class);
+
+  private final ProcessEngine processEngine;
+  private final int threads;
+  private final int maxJobs;
+
+  /**
+   * Creates the drain.
+   *
+   * @param processEngine
+   *          engine to execute jobs of.
+   * @param threads
+   *          number of worker threads.
+   * @param maxJobs
+   *          maximum number of jobs to execute.
+   */
+  public JobDrain(final ProcessEngine processEngine, final int threads, final int maxJobs) {
+    checkArgument(processEngine != null, "processEngine must not be null!");
+    checkArgument(threads > 0, "threads must be positive!");
+    checkArgument(maxJobs > 0, "maxJobs must be positive!");
+    this.processEngine = processEngine;
+    this.threads = threads;
+    this.maxJobs = maxJobs;
+  }
+
+  /**
+   * Executes jobs until none is executable or the limit is reached.
+   *
+   * @return execution statistics.
+   */
+  public Result execute() {
+    final long start = System.currentTimeMillis();
+    final Map<String, Object> mocks = Mocks.getMocks() != null ? ImmutableMap.copyOf(Mocks.getMocks()) : ImmutableMap.<String, Object> of();
+    final ManagementService managementService = processEngine.getManagementService();
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+    int executed = 0;
+    int failed = 0;
+    try {
+      while (executed + failed < maxJobs) {
+        final List<Job> jobs = managementService.createJobQuery().executable().listPage(0, maxJobs - executed - failed);
+        if (jobs.isEmpty()) {
+          break;
+        }
+        final List<Future<Boolean>> results = Lists.newArrayListWithCapacity(jobs.size());
+        for (final Job job : jobs) {
+          results.add(executor.submit(new ExecuteJob(managementService, job.getId(), mocks)));
+        }
+        for (final Future<Boolean> result : results) {
+          if (result.get()) {
+            executed++;
+          } else {
+            failed++;
+          }
+        }
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (final ExecutionException e) {
+      throw new IllegalStateException("Job execution failed", e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+
+    final Result result = new Result(executed, failed, System.currentTimeMillis() - start);
+    LOG.info("{}", result);
+    return result;
+  }
+
+  /**
+   * Execution of one job by a worker.
+   */
+  private static class ExecuteJob implements Callable<Boolean> {
+
+    private final ManagementService managementService;
+    private final String jobId;
+    private final Map<String, Object> mocks;
+
+    ExecuteJob(final ManagementService managementService, final String jobId, final Map<String, Object> mocks) {
+      this.managementService = managementService;
+      this.jobId = jobId;
+      this.mocks = mocks;
+    }
+
+    @Override
+    public Boolean call() {
+      for (final Map.Entry<String, Object> mock : mocks.entrySet()) {
+        Mocks.register(mock.getKey(), mock.getValue());
+      }
+      try {
+        managementService.executeJob(jobId);
+        return Boolean.TRUE;
+      } catch (final RuntimeException e) {
+        LOG.debug("Job {} failed: {}", jobId, e.getMessage());
+        return Boolean.FALSE;
+      } finally {
+        Mocks.reset();
+      }
+    }
+  }
+
+  /**
+   * Statistics of a drain run.
+   */
+  public static class Result {
+
+    private final int executed;
+    private final int failed;
+    private final long durationMillis;
+
+    Result(final int executed, final int failed, final long durationMillis) {
+      this.executed = executed;
+      this.failed = failed;
+      this.durationMillis = durationMillis;
+    }
+
+    /**
+     * Retrieves the number of successfully executed jobs.
+     *
+     * @return number of jobs.
+     */
+    public int getExecuted() {
+      return executed;
+    }
+
+    /**
+     * Retrieves the number of failed job executions.
+     *
+     * @return number of failures.
+     */
+    public int getFailed() {
+      return failed;
+    }
+
+    /**
+     * Retrieves the duration of the drain.
+     *
+     * @return duration in milliseconds.
+     */
+    public long getDurationMillis() {
+      return durationMillis;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("Executed %d jobs (%d failed) in %d ms.", executed, failed, durationMillis);
+    }
+  }
+}
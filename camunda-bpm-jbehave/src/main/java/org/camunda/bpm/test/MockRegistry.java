@@ -0,0 +1,87 @@
+package org.camunda.bpm.test;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/**
+ * Registry of mocks and beans resolved by the expressions of one engine. <br />
+ * The pooled engine is used by one story at a time, so the registry is scoped
+ * to the story. Unlike {@link org.camunda.bpm.engine.test.mock.Mocks}, the
+ * registered beans are visible to all threads working on the engine (job
+ * workers, concurrently run rows). Registration and lookup do not block.
+ *
+ * @author Simon Zambrovski, Holisticon AG
+ * @see MockRegistryPlugin
+ */
+public class MockRegistry {
+
+  private final ConcurrentMap<String, Object> beans = Maps.newConcurrentMap();
+
+  /**
+   * Registers a bean, replacing a bean with the same name.
+   *
+   * @param name
+   *          name used in expressions.
+   * @param bean
+   *          bean or mock.
+   */
+  public void register(final String name, final Object bean) {
+    checkArgument(name != null, "name must not be null!");
+    checkArgument(bean != null, "bean must not be null!");
+    beans.put(name, bean);
+  }
+
+  /**
+   * Retrieves a bean.
+   *
+   * @param name
+   *          name of the bean.
+   * @return bean or null, if not registered.
+   */
+  public Object get(final String name) {
+    return beans.get(name);
+  }
+
+  /**
+   * Checks if a bean is registered.
+   *
+   * @param name
+   *          name of the bean.
+   * @return true, if registered.
+   */
+  public boolean contains(final String name) {
+    return beans.containsKey(name);
+  }
+
+  /**
+   * Removes all beans.
+   */
+  public void reset() {
+    beans.clear();
+  }
+
+  /**
+   * Copies the registered beans.
+   *
+   * @return map from name to bean.
+   */
+  public Map<String, Object> getBeans() {
+    return ImmutableMap.copyOf(beans);
+  }
+
+  /**
+   * Replaces the registered beans.
+   *
+   * @param snapshot
+   *          map from name to bean.
+   */
+  void restore(final Map<String, Object> snapshot) {
+    beans.clear();
+    beans.putAll(snapshot);
+  }
+}
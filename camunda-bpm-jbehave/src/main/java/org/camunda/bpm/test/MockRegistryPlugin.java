@@ -0,0 +1,132 @@
+package org.camunda.bpm.test;
+
+import java.beans.FeatureDescriptor;
+import java.util.Iterator;
+
+import org.camunda.bpm.engine.ProcessEngine;
+import org.camunda.bpm.engine.impl.cfg.AbstractProcessEnginePlugin;
+import org.camunda.bpm.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.camunda.bpm.engine.impl.el.ExpressionManager;
+import org.camunda.bpm.engine.impl.javax.el.CompositeELResolver;
+import org.camunda.bpm.engine.impl.javax.el.ELContext;
+import org.camunda.bpm.engine.impl.javax.el.ELResolver;
+import org.camunda.bpm.engine.test.mock.MockExpressionManager;
+import org.camunda.bpm.util.ProcessEnginePlugins;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Process engine plugin installing a {@link MockRegistry} on the engine.
+ * Expressions resolve beans of the registry first and fall back to the
+ * {@link org.camunda.bpm.engine.test.mock.Mocks} and the variables. <br />
+ * The plugin replaces the default or the mock expression manager only, other
+ * expression managers are kept and the registry is not used for expressions.
+ *
+ * @author Simon Zambrovski, Holisticon AG
+ */
+public class MockRegistryPlugin extends AbstractProcessEnginePlugin {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MockRegistryPlugin.class);
+
+  private final MockRegistry registry = new MockRegistry();
+
+  /**
+   * Retrieves the mock registry of the engine.
+   *
+   * @param processEngine
+   *          process engine.
+   * @return registry or null, if the engine has been built without the plugin.
+   */
+  public static MockRegistry registryOf(final ProcessEngine processEngine) {
+    final MockRegistryPlugin plugin = ProcessEnginePlugins.find(processEngine, MockRegistryPlugin.class);
+    return plugin != null ? plugin.getRegistry() : null;
+  }
+
+  @Override
+  public void preInit(final ProcessEngineConfigurationImpl configuration) {
+    final ExpressionManager expressionManager = configuration.getExpressionManager();
+    if (expressionManager == null || expressionManager instanceof MockExpressionManager) {
+      configuration.setExpressionManager(new RegistryExpressionManager(registry));
+    } else {
+      LOG.warn("Custom expression manager {} is kept, registered mocks are not resolved by expressions.", expressionManager.getClass().getName());
+    }
+  }
+
+  /**
+   * Retrieves the registry.
+   *
+   * @return registry of the engine.
+   */
+  public MockRegistry getRegistry() {
+    return registry;
+  }
+
+  /**
+   * Expression manager resolving the beans of the registry before the mocks.
+   */
+  private static class RegistryExpressionManager extends MockExpressionManager {
+
+    private final MockRegistry registry;
+
+    RegistryExpressionManager(final MockRegistry registry) {
+      this.registry = registry;
+    }
+
+    @Override
+    protected ELResolver createElResolver() {
+      final CompositeELResolver resolver = new CompositeELResolver();
+      resolver.add(new RegistryElResolver(registry));
+      resolver.add(super.createElResolver());
+      return resolver;
+    }
+  }
+
+  /**
+   * Read-only resolver of top level identifiers from the registry.
+   */
+  private static class RegistryElResolver extends ELResolver {
+
+    private final MockRegistry registry;
+
+    RegistryElResolver(final MockRegistry registry) {
+      this.registry = registry;
+    }
+
+    @Override
+    public Object getValue(final ELContext context, final Object base, final Object property) {
+      if (base == null && property != null) {
+        final Object bean = registry.get(property.toString());
+        if (bean != null) {
+          context.setPropertyResolved(true);
+          return bean;
+        }
+      }
+      return null;
+    }
+
+    @Override
+    public Class<?> getCommonPropertyType(final ELContext context, final Object base) {
+      return Object.class;
+    }
+
+    @Override
+    public Iterator<FeatureDescriptor> getFeatureDescriptors(final ELContext context, final Object base) {
+      return null;
+    }
+
+    @Override
+    public Class<?> getType(final ELContext context, final Object base, final Object property) {
+      return null;
+    }
+
+    @Override
+    public boolean isReadOnly(final ELContext context, final Object base, final Object property) {
+      return true;
+    }
+
+    @Override
+    public void setValue(final ELContext context, final Object base, final Object property, final Object value) {
+      // read only
+    }
+  }
+}
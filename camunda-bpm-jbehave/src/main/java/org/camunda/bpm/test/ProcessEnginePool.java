@@ -0,0 +1,214 @@
+package org.camunda.bpm.test;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.camunda.bpm.engine.ProcessEngine;
+import org.camunda.bpm.engine.ProcessEngineConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.Maps;
+
+/**
+ * Pool of process engines shared between stories. <br />
+ * Building a process engine (parsing the MyBatis mappings, creating the
+ * database schema) is expensive, so engines are built once per configuration
+ * key and borrowed by {@link CamundaSupport} for the duration of a story. A
+ * borrowed engine is exclusively used by the borrower until it is released.
+ *
+ * @author Simon Zambrovski, Holisticon AG
+ */
+public final class ProcessEnginePool {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ProcessEnginePool.class);
+  private static final String H2_IN_MEMORY = "jdbc:h2:mem:";
+
+  private static final ConcurrentMap<String, Queue<ProcessEngine>> IDLE = Maps.newConcurrentMap();
+  private static final ConcurrentMap<String, ProcessEngine> ALL = Maps.newConcurrentMap();
+  private static final Map<ProcessEngine, String> KEYS = Maps.newConcurrentMap();
+  private static final ConcurrentMap<String, Future<ProcessEngine>> WARMING = Maps.newConcurrentMap();
+  private static final AtomicInteger COUNTER = new AtomicInteger();
+
+  static {
+    Runtime.getRuntime().addShutdownHook(new Thread("process-engine-pool-shutdown") {
+      @Override
+      public void run() {
+        closeAll();
+      }
+    });
+  }
+
+  private ProcessEnginePool() {
+    // no instances
+  }
+
+  /**
+   * Borrows an idle engine built from the configuration with given key or
+   * builds a new one, if all engines of this key are in use. Waits for a
+   * running warm-up of this key, instead of building a second engine.
+   *
+   * @param key
+   *          configuration key.
+   * @param configuration
+   *          supplier of the engine configuration, used only if a new engine
+   *          has to be built.
+   * @return process engine, exclusively used by the caller until released.
+   */
+  public static ProcessEngine borrow(final String key, final Supplier<? extends ProcessEngineConfiguration> configuration) {
+    checkArgument(key != null, "key must not be null!");
+    checkArgument(configuration != null, "configuration must not be null!");
+
+    ProcessEngine idle = idleEngines(key).poll();
+    if (idle == null && awaitWarmUp(key)) {
+      idle = idleEngines(key).poll();
+    }
+    if (idle != null) {
+      LOG.debug("Borrowing pooled process engine {}.", idle.getName());
+      return idle;
+    }
+    return build(key, configuration.get());
+  }
+
+  /**
+   * Builds an engine of given key on a background thread and adds it to the
+   * idle engines, unless an idle engine of this key exists or is being built.
+   * Used to overlap the engine bootstrap with story discovery and parsing.
+   * 
+   * @param key
+   *          configuration key.
+   * @param configuration
+   *          supplier of the engine configuration.
+   */
+  public static void warmUp(final String key, final Supplier<? extends ProcessEngineConfiguration> configuration) {
+    checkArgument(key != null, "key must not be null!");
+    checkArgument(configuration != null, "configuration must not be null!");
+    if (!idleEngines(key).isEmpty() || WARMING.containsKey(key)) {
+      return;
+    }
+    final FutureTask<ProcessEngine> warmUp = new FutureTask<ProcessEngine>(new Callable<ProcessEngine>() {
+      @Override
+      public ProcessEngine call() {
+        try {
+          final ProcessEngine processEngine = build(key, configuration.get());
+          idleEngines(key).offer(processEngine);
+          return processEngine;
+        } finally {
+          WARMING.remove(key);
+        }
+      }
+    });
+    if (WARMING.putIfAbsent(key, warmUp) == null) {
+      final Thread thread = new Thread(warmUp, "process-engine-warm-up-" + key);
+      thread.setDaemon(true);
+      thread.start();
+    }
+  }
+
+  private static boolean awaitWarmUp(final String key) {
+    final Future<ProcessEngine> warmUp = WARMING.get(key);
+    if (warmUp == null) {
+      return false;
+    }
+    try {
+      warmUp.get();
+      return true;
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    } catch (final ExecutionException e) {
+      LOG.warn("Warm-up of process engine {} failed.", key, e.getCause());
+      return false;
+    }
+  }
+
+  /**
+   * Returns the engine to the pool. The engine must be reset by the caller
+   * before.
+   *
+   * @param processEngine
+   *          engine borrowed from the pool.
+   */
+  public static void release(final ProcessEngine processEngine) {
+    final String key = KEYS.get(processEngine);
+    checkState(key != null, "Process engine %s is not managed by the pool!", processEngine.getName());
+    idleEngines(key).offer(processEngine);
+    LOG.debug("Process engine {} released.", processEngine.getName());
+  }
+
+  /**
+   * Retrieves the configuration key of a pooled engine.
+   *
+   * @param processEngine
+   *          engine borrowed from the pool.
+   * @return configuration key or null, if the engine is not managed by the
+   *         pool.
+   */
+  public static String keyOf(final ProcessEngine processEngine) {
+    return processEngine != null ? KEYS.get(processEngine) : null;
+  }
+
+  /**
+   * Checks if the engine is managed by the pool.
+   *
+   * @param processEngine
+   *          engine to check.
+   * @return true, if the engine has been built by the pool.
+   */
+  public static boolean isPooled(final ProcessEngine processEngine) {
+    return processEngine != null && KEYS.containsKey(processEngine);
+  }
+
+  /**
+   * Closes all engines built by the pool.
+   */
+  public static synchronized void closeAll() {
+    for (final ProcessEngine processEngine : ALL.values()) {
+      processEngine.close();
+    }
+    ALL.clear();
+    KEYS.clear();
+    IDLE.clear();
+  }
+
+  private static ProcessEngine build(final String key, final ProcessEngineConfiguration configuration) {
+    final String name = key + "-" + COUNTER.incrementAndGet();
+    configuration.setProcessEngineName(name);
+    // isolate in-memory databases of engines sharing the same configuration
+    final String jdbcUrl = configuration.getJdbcUrl();
+    if (jdbcUrl != null && jdbcUrl.startsWith(H2_IN_MEMORY)) {
+      configuration.setJdbcUrl(H2_IN_MEMORY + name + ";DB_CLOSE_DELAY=1000");
+    }
+
+    final long start = System.currentTimeMillis();
+    final ProcessEngine processEngine = configuration.buildProcessEngine();
+    LOG.info("Process engine {} built in {} ms.", name, System.currentTimeMillis() - start);
+
+    ALL.put(name, processEngine);
+    KEYS.put(processEngine, key);
+    return processEngine;
+  }
+
+  private static Queue<ProcessEngine> idleEngines(final String key) {
+    Queue<ProcessEngine> engines = IDLE.get(key);
+    if (engines == null) {
+      final Queue<ProcessEngine> created = new ConcurrentLinkedQueue<ProcessEngine>();
+      engines = IDLE.putIfAbsent(key, created);
+      if (engines == null) {
+        engines = created;
+      }
+    }
+    return engines;
+  }
+}
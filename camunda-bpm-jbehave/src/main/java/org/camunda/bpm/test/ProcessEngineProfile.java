@@ -0,0 +1,120 @@
+package org.camunda.bpm.test;
+
+import static org.camunda.bpm.engine.test.cfg.MostUsefulProcessEngineConfiguration.mostUsefulProcessEngineConfiguration;
+
+import org.camunda.bpm.engine.ProcessEngineConfiguration;
+import org.camunda.bpm.engine.impl.cfg.ProcessEngineConfigurationImpl;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Named performance profiles of the engine used by {@link CamundaSupport}.
+ * Engines of every profile are pooled separately in the
+ * {@link ProcessEnginePool}. Every profile installs the
+ * {@link VirtualClockPlugin}, the {@link ProcessEventPlugin} and the
+ * {@link MockRegistryPlugin}.
+ *
+ * @author Simon Zambrovski, Holisticon AG
+ */
+public enum ProcessEngineProfile implements Supplier<ProcessEngineConfiguration> {
+
+  /**
+   * Most useful configuration for tests, with the plugins of all profiles
+   * only.
+   */
+  DEFAULT {
+    @Override
+    void configure(final ProcessEngineConfigurationImpl configuration) {
+      // use as is
+    }
+  },
+
+  /**
+   * Lean engine for behaviour stories: activity history (enough for
+   * {@code hasPassed} assertions), no metrics, no job executor.
+   */
+  LEAN {
+    @Override
+    void configure(final ProcessEngineConfigurationImpl configuration) {
+      configuration.setHistory(ProcessEngineConfiguration.HISTORY_ACTIVITY);
+      configuration.setMetricsEnabled(false);
+      configuration.setDbMetricsReporterActivate(false);
+      configuration.setJobExecutorActivate(false);
+    }
+  },
+
+  /**
+   * Engine writing full history.
+   */
+  FULL {
+    @Override
+    void configure(final ProcessEngineConfigurationImpl configuration) {
+      configuration.setHistory(ProcessEngineConfiguration.HISTORY_FULL);
+    }
+  };
+
+  /**
+   * Name of the story meta property selecting the profile.
+   */
+  public static final String META_PROPERTY = "engineProfile";
+
+  private static volatile ProcessEngineProfile selected = DEFAULT;
+
+  /**
+   * Adjusts the configuration to the profile, after the plugins have been
+   * added.
+   *
+   * @param configuration
+   *          configuration to adjust.
+   */
+  abstract void configure(ProcessEngineConfigurationImpl configuration);
+
+  @Override
+  public ProcessEngineConfiguration get() {
+    final ProcessEngineConfigurationImpl configuration = mostUsefulProcessEngineConfiguration();
+    configuration.getProcessEnginePlugins().add(new VirtualClockPlugin());
+    configuration.getProcessEnginePlugins().add(new ProcessEventPlugin());
+    configuration.getProcessEnginePlugins().add(new MockRegistryPlugin());
+    configure(configuration);
+    return configuration;
+  }
+
+  /**
+   * Starts building a pooled engine of this profile in the background.
+   *
+   * @see ProcessEnginePool#warmUp(String, Supplier)
+   */
+  public void warmUp() {
+    ProcessEnginePool.warmUp(name(), this);
+  }
+
+  /**
+   * Parses the profile name, ignoring the case.
+   *
+   * @param name
+   *          name of the profile.
+   * @return profile or null, if the name is empty.
+   */
+  public static ProcessEngineProfile parse(final String name) {
+    return (name == null || name.trim().isEmpty()) ? null : valueOf(name.trim().toUpperCase());
+  }
+
+  /**
+   * Retrieves the profile used by default.
+   *
+   * @return selected profile.
+   */
+  public static ProcessEngineProfile selected() {
+    return selected;
+  }
+
+  /**
+   * Selects the profile used by default, if the story does not select one.
+   *
+   * @param profile
+   *          profile to use.
+   */
+  public static void select(final ProcessEngineProfile profile) {
+    selected = profile != null ? profile : DEFAULT;
+  }
+}
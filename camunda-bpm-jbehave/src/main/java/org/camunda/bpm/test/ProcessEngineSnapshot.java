@@ -0,0 +1,194 @@
+package org.camunda.bpm.test;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.camunda.bpm.engine.ProcessEngine;
+import org.camunda.bpm.engine.ProcessEngineException;
+import org.camunda.bpm.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.camunda.bpm.engine.impl.db.DbIdGenerator;
+import org.camunda.bpm.engine.test.mock.Mocks;
+import org.camunda.bpm.util.ProcessEnginePlugins;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+/**
+ * Snapshot of the state of an H2 process engine: the content of the engine
+ * tables, the virtual clock, the deployment cache, the mock registry and the
+ * registered mocks.
+ * <br />
+ * The id generator property is not restored, so ids stay unique. A snapshot
+ * can be restored to the engine it has been taken from or to another pooled
+ * engine of the same profile. Restored to another engine, the id generator of
+ * that engine is advanced beyond the ids of the snapshot.
+ *
+ * @author Simon Zambrovski, Holisticon AG
+ */
+public final class ProcessEngineSnapshot {
+
+  private static final String TABLES = "ACT_";
+  private static final String ID_PROPERTY_TABLE = "ACT_GE_PROPERTY";
+  private static final String INSERT = "INSERT INTO ";
+  private static final String NEXT_ID = "next.dbid";
+
+  private final ProcessEngine processEngine;
+  private final List<String> inserts;
+  private final Map<String, String> deployments;
+  private final Map<String, ProcessEventTrace.InstanceTrace> trace;
+  private final Map<String, Object> mocks;
+  private final Map<String, Object> beans;
+  private final Date currentTime;
+  private final long nextId;
+
+  private ProcessEngineSnapshot(final ProcessEngine processEngine, final List<String> inserts, final long nextId, final Map<String, Object> mocks) {
+    this.processEngine = processEngine;
+    this.inserts = inserts;
+    this.nextId = nextId;
+    this.mocks = mocks;
+    this.deployments = DeploymentCache.forEngine(processEngine).snapshot();
+    final ProcessEventTrace eventTrace = ProcessEventPlugin.traceOf(processEngine);
+    this.trace = eventTrace != null ? eventTrace.snapshot() : null;
+    final VirtualClock clock = VirtualClockPlugin.clockOf(processEngine);
+    this.currentTime = clock != null && clock.isSet() ? clock.getCurrentTime() : null;
+    final MockRegistry registry = MockRegistryPlugin.registryOf(processEngine);
+    this.beans = registry != null ? registry.getBeans() : null;
+  }
+
+  /**
+   * Takes the snapshot of the engine. Must not be called while commands are
+   * executed on the engine.
+   *
+   * @param processEngine
+   *          process engine.
+   * @return snapshot.
+   */
+  public static ProcessEngineSnapshot take(final ProcessEngine processEngine) {
+    final List<String> inserts = Lists.newArrayList();
+    long nextId = 0;
+    final Connection connection = ProcessEngineTruncation.connection(processEngine);
+    try {
+      final Statement statement = connection.createStatement();
+      try {
+        final ResultSet script = statement.executeQuery("SCRIPT NOPASSWORDS NOSETTINGS");
+        try {
+          while (script.next()) {
+            final String sql = script.getString(1);
+            if (isRestored(sql)) {
+              inserts.add(sql);
+            }
+          }
+        } finally {
+          script.close();
+        }
+        final ResultSet property = statement.executeQuery("SELECT VALUE_ FROM " + ID_PROPERTY_TABLE + " WHERE NAME_ = '" + NEXT_ID + "'");
+        try {
+          if (property.next()) {
+            nextId = Long.parseLong(property.getString(1));
+          }
+        } finally {
+          property.close();
+        }
+      } finally {
+        statement.close();
+      }
+    } catch (final SQLException e) {
+      throw new ProcessEngineException("Could not take snapshot of engine " + processEngine.getName(), e);
+    } finally {
+      ProcessEngineTruncation.close(connection);
+    }
+
+    final Map<String, Object> mocks = Mocks.getMocks() != null ? ImmutableMap.copyOf(Mocks.getMocks()) : ImmutableMap.<String, Object> of();
+    return new ProcessEngineSnapshot(processEngine, ImmutableList.copyOf(inserts), nextId, mocks);
+  }
+
+  /**
+   * Restores the snapshot, replacing the current engine state.
+   *
+   * @param target
+   *          engine the snapshot has been taken from or a pooled engine of the
+   *          same profile.
+   */
+  public void restore(final ProcessEngine target) {
+    checkArgument(isRestorableTo(target), "Snapshot of engine %s can not be restored to engine %s", processEngine.getName(), target.getName());
+
+    final List<String> statements = Lists.newArrayList();
+    for (final String table : ProcessEngineTruncation.tables(target, TABLES)) {
+      if (!ID_PROPERTY_TABLE.equals(table)) {
+        statements.add("TRUNCATE TABLE " + table);
+      }
+    }
+    statements.addAll(inserts);
+    final boolean foreign = target != processEngine;
+    if (foreign) {
+      statements.add("UPDATE " + ID_PROPERTY_TABLE + " SET VALUE_ = '" + nextId + "' WHERE NAME_ = '" + NEXT_ID + "' AND CAST(VALUE_ AS BIGINT) < "
+          + nextId);
+    }
+    ProcessEngineTruncation.execute(target, statements);
+
+    final ProcessEngineConfigurationImpl configuration = ProcessEnginePlugins.configuration(target);
+    if (foreign && configuration.getIdGenerator() instanceof DbIdGenerator) {
+      // fetch a new block beyond the restored ids
+      ((DbIdGenerator) configuration.getIdGenerator()).reset();
+    }
+    configuration.getDeploymentCache().discardProcessDefinitionCache();
+    configuration.getDeploymentCache().discardCaseDefinitionCache();
+    configuration.getDeploymentCache().discardDecisionDefinitionCache();
+    DeploymentCache.forEngine(target).restore(deployments);
+
+    final ProcessEventTrace eventTrace = ProcessEventPlugin.traceOf(target);
+    if (eventTrace != null && trace != null) {
+      eventTrace.restore(trace);
+    }
+    final VirtualClock clock = VirtualClockPlugin.clockOf(target);
+    if (clock != null) {
+      clock.setCurrentTime(currentTime);
+    }
+    final MockRegistry registry = MockRegistryPlugin.registryOf(target);
+    if (registry != null && beans != null) {
+      registry.restore(beans);
+    }
+    Mocks.reset();
+    for (final Map.Entry<String, Object> mock : mocks.entrySet()) {
+      Mocks.register(mock.getKey(), mock.getValue());
+    }
+  }
+
+  /**
+   * Checks if the snapshot can be restored to the engine.
+   *
+   * @param target
+   *          engine to restore to.
+   * @return true, if the snapshot has been taken from the engine or from a
+   *         pooled engine of the same profile.
+   */
+  public boolean isRestorableTo(final ProcessEngine target) {
+    if (target == processEngine) {
+      return true;
+    }
+    final String key = ProcessEnginePool.keyOf(processEngine);
+    return key != null && key.equals(ProcessEnginePool.keyOf(target));
+  }
+
+  /**
+   * Checks if the script line inserts data of an engine table, except of the
+   * id generator property.
+   */
+  private static boolean isRestored(final String sql) {
+    if (!sql.startsWith(INSERT)) {
+      return false;
+    }
+    final int open = sql.indexOf('(');
+    final String table = sql.substring(INSERT.length(), open > 0 ? open : sql.length()).trim();
+    final String name = table.substring(table.lastIndexOf('.') + 1).replace("\"", "").toUpperCase();
+    return name.startsWith(TABLES) && !ID_PROPERTY_TABLE.equals(name);
+  }
+}
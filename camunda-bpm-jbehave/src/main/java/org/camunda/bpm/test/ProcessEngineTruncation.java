@@ -0,0 +1,186 @@
+package org.camunda.bpm.test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import org.camunda.bpm.engine.ProcessEngine;
+import org.camunda.bpm.engine.ProcessEngineException;
+import org.camunda.bpm.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.camunda.bpm.util.ProcessEnginePlugins;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Fast reset of a process engine by bulk deletion of its tables. <br />
+ * Instead of cascading through runtime, history and job rows entity by entity
+ * (as {@code deleteDeployment(id, true)} does), the tables are cleared by a
+ * few statements. The engine stays up, its caches are invalidated. Only H2
+ * databases are supported.
+ *
+ * @author Simon Zambrovski, Holisticon AG
+ */
+public final class ProcessEngineTruncation {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ProcessEngineTruncation.class);
+
+  private static final String H2 = "h2";
+  private static final String RUNTIME_TABLES = "ACT_RU_";
+  private static final String HISTORY_TABLES = "ACT_HI_";
+  private static final String REPOSITORY_TABLES = "ACT_RE_";
+
+  /**
+   * Runtime tables holding definition data (authorizations, filters) or rows
+   * created by deployments (job definitions, timer start jobs, message start
+   * subscriptions, candidate starters).
+   */
+  private static final String[] KEEP_ON_RUNTIME_RESET = { "ACT_RU_AUTHORIZATION", "ACT_RU_FILTER", "ACT_RU_JOBDEF", "ACT_RU_JOB",
+      "ACT_RU_EVENT_SUBSCR", "ACT_RU_IDENTITYLINK" };
+
+  private ProcessEngineTruncation() {
+    // no instances
+  }
+
+  /**
+   * Checks if the engine database supports truncation.
+   *
+   * @param processEngine
+   *          process engine.
+   * @return true, if the engine runs on H2.
+   */
+  public static boolean isSupported(final ProcessEngine processEngine) {
+    return H2.equals(ProcessEnginePlugins.configuration(processEngine).getDatabaseType());
+  }
+
+  /**
+   * Removes all runtime, history and job data, keeping the deployments.
+   *
+   * @param processEngine
+   *          process engine.
+   */
+  public static void truncateInstances(final ProcessEngine processEngine) {
+    final List<String> statements = Lists.newArrayList();
+    for (final String table : tables(processEngine, RUNTIME_TABLES, HISTORY_TABLES)) {
+      if (!isKept(table)) {
+        statements.add("TRUNCATE TABLE " + table);
+      }
+    }
+    statements.add("DELETE FROM ACT_RU_JOB WHERE PROCESS_INSTANCE_ID_ IS NOT NULL");
+    statements.add("DELETE FROM ACT_RU_EVENT_SUBSCR WHERE PROC_INST_ID_ IS NOT NULL");
+    statements.add("DELETE FROM ACT_RU_IDENTITYLINK WHERE PROC_DEF_ID_ IS NULL");
+    statements.add("DELETE FROM ACT_GE_BYTEARRAY WHERE DEPLOYMENT_ID_ IS NULL");
+
+    execute(processEngine, statements);
+  }
+
+  /**
+   * Removes all deployments, runtime, history and job data and invalidates the
+   * engine caches.
+   *
+   * @param processEngine
+   *          process engine.
+   */
+  public static void truncateAll(final ProcessEngine processEngine) {
+    final List<String> statements = Lists.newArrayList();
+    for (final String table : tables(processEngine, RUNTIME_TABLES, HISTORY_TABLES, REPOSITORY_TABLES)) {
+      if (!"ACT_RU_AUTHORIZATION".equals(table) && !"ACT_RU_FILTER".equals(table)) {
+        statements.add("TRUNCATE TABLE " + table);
+      }
+    }
+    statements.add("TRUNCATE TABLE ACT_GE_BYTEARRAY");
+
+    execute(processEngine, statements);
+
+    final ProcessEngineConfigurationImpl configuration = ProcessEnginePlugins.configuration(processEngine);
+    configuration.getDeploymentCache().discardProcessDefinitionCache();
+    configuration.getDeploymentCache().discardCaseDefinitionCache();
+    configuration.getDeploymentCache().discardDecisionDefinitionCache();
+    DeploymentCache.forEngine(processEngine).invalidate();
+  }
+
+  private static boolean isKept(final String table) {
+    for (final String kept : KEEP_ON_RUNTIME_RESET) {
+      if (kept.equals(table)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  static List<String> tables(final ProcessEngine processEngine, final String... prefixes) {
+    final List<String> tables = Lists.newArrayList();
+    final Connection connection = connection(processEngine);
+    try {
+      final ResultSet resultSet = connection.getMetaData().getTables(null, null, "ACT_%", new String[] { "TABLE" });
+      try {
+        while (resultSet.next()) {
+          final String table = resultSet.getString("TABLE_NAME").toUpperCase();
+          for (final String prefix : prefixes) {
+            if (table.startsWith(prefix)) {
+              tables.add(table);
+            }
+          }
+        }
+      } finally {
+        resultSet.close();
+      }
+    } catch (final SQLException e) {
+      throw new ProcessEngineException("Could not read tables of engine " + processEngine.getName(), e);
+    } finally {
+      close(connection);
+    }
+    return tables;
+  }
+
+  static void execute(final ProcessEngine processEngine, final List<String> statements) {
+    final long start = System.currentTimeMillis();
+    final Connection connection = connection(processEngine);
+    try {
+      final Statement statement = connection.createStatement();
+      try {
+        statement.execute("SET REFERENTIAL_INTEGRITY FALSE");
+        try {
+          for (final String sql : statements) {
+            statement.execute(sql);
+          }
+        } finally {
+          statement.execute("SET REFERENTIAL_INTEGRITY TRUE");
+        }
+      } finally {
+        statement.close();
+      }
+      if (!connection.getAutoCommit()) {
+        connection.commit();
+      }
+    } catch (final SQLException e) {
+      throw new ProcessEngineException("Could not truncate tables of engine " + processEngine.getName(), e);
+    } finally {
+      close(connection);
+    }
+    LOG.debug("Truncated engine {} in {} ms.", processEngine.getName(), System.currentTimeMillis() - start);
+  }
+
+  static Connection connection(final ProcessEngine processEngine) {
+    final ProcessEngineConfigurationImpl configuration = ProcessEnginePlugins.configuration(processEngine);
+    if (!isSupported(processEngine)) {
+      throw new ProcessEngineException("Truncation is not supported for database type " + configuration.getDatabaseType());
+    }
+    try {
+      return configuration.getDataSource().getConnection();
+    } catch (final SQLException e) {
+      throw new ProcessEngineException("Could not connect to the database of engine " + processEngine.getName(), e);
+    }
+  }
+
+  static void close(final Connection connection) {
+    try {
+      connection.close();
+    } catch (final SQLException e) {
+      LOG.warn("Could not close connection", e);
+    }
+  }
+}
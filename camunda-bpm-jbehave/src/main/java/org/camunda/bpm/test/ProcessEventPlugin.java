@@ -0,0 +1,51 @@
+package org.camunda.bpm.test;
+
+import org.camunda.bpm.engine.ProcessEngine;
+import org.camunda.bpm.engine.impl.cfg.AbstractProcessEnginePlugin;
+import org.camunda.bpm.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.camunda.bpm.engine.impl.history.handler.CompositeDbHistoryEventHandler;
+import org.camunda.bpm.engine.impl.history.handler.CompositeHistoryEventHandler;
+import org.camunda.bpm.engine.impl.history.handler.HistoryEventHandler;
+import org.camunda.bpm.util.ProcessEnginePlugins;
+
+/**
+ * Process engine plugin installing a {@link ProcessEventTrace} as additional
+ * history event handler.
+ *
+ * @author Simon Zambrovski, Holisticon AG
+ */
+public class ProcessEventPlugin extends AbstractProcessEnginePlugin {
+
+  private final ProcessEventTrace trace = new ProcessEventTrace();
+
+  /**
+   * Retrieves the event trace of the engine.
+   *
+   * @param processEngine
+   *          process engine.
+   * @return trace or null, if the engine has been built without the plugin.
+   */
+  public static ProcessEventTrace traceOf(final ProcessEngine processEngine) {
+    final ProcessEventPlugin plugin = ProcessEnginePlugins.find(processEngine, ProcessEventPlugin.class);
+    return plugin != null ? plugin.getTrace() : null;
+  }
+
+  @Override
+  public void preInit(final ProcessEngineConfigurationImpl configuration) {
+    final HistoryEventHandler handler = configuration.getHistoryEventHandler();
+    if (handler == null) {
+      configuration.setHistoryEventHandler(new CompositeDbHistoryEventHandler(trace));
+    } else {
+      configuration.setHistoryEventHandler(new CompositeHistoryEventHandler(handler, trace));
+    }
+  }
+
+  /**
+   * Retrieves the trace.
+   *
+   * @return event trace of the engine.
+   */
+  public ProcessEventTrace getTrace() {
+    return trace;
+  }
+}
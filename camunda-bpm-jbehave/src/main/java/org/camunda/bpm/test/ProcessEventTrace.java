@@ -0,0 +1,352 @@
+package org.camunda.bpm.test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.camunda.bpm.engine.impl.cfg.TransactionListener;
+import org.camunda.bpm.engine.impl.cfg.TransactionState;
+import org.camunda.bpm.engine.impl.context.Context;
+import org.camunda.bpm.engine.impl.history.event.HistoricActivityInstanceEventEntity;
+import org.camunda.bpm.engine.impl.history.event.HistoricProcessInstanceEventEntity;
+import org.camunda.bpm.engine.impl.history.event.HistoricTaskInstanceEventEntity;
+import org.camunda.bpm.engine.impl.history.event.HistoryEvent;
+import org.camunda.bpm.engine.impl.history.handler.HistoryEventHandler;
+import org.camunda.bpm.engine.impl.interceptor.CommandContext;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Trace of process instance events of one engine. <br />
+ * Receives the history events of the engine and applies them after the
+ * transaction producing them has been committed. The trace is an in-memory
+ * index from process instance to its active and passed activities, its open
+ * tasks and its end state. Threads may check the index or wait for an activity to be entered or
+ * a process instance to end without querying the database. The engine must
+ * produce at least activity history.
+ *
+ * @author Simon Zambrovski, Holisticon AG
+ * @see ProcessEventPlugin
+ */
+public class ProcessEventTrace implements HistoryEventHandler {
+
+  private static final String START = "start";
+  private static final String END = "end";
+  private static final String TASK_CREATE = "create";
+  private static final String TASK_COMPLETE = "complete";
+  private static final String TASK_DELETE = "delete";
+
+  private final ConcurrentMap<String, InstanceTrace> instances = Maps.newConcurrentMap();
+
+  @Override
+  public void handleEvent(final HistoryEvent historyEvent) {
+    if ((!(historyEvent instanceof HistoricActivityInstanceEventEntity) && !(historyEvent instanceof HistoricProcessInstanceEventEntity)
+        && !(historyEvent instanceof HistoricTaskInstanceEventEntity)) || historyEvent.getProcessInstanceId() == null) {
+      return;
+    }
+    final CommandContext commandContext = Context.getCommandContext();
+    if (commandContext == null) {
+      apply(historyEvent);
+    } else {
+      commandContext.getTransactionContext().addTransactionListener(TransactionState.COMMITTED, new TransactionListener() {
+        @Override
+        public void execute(final CommandContext context) {
+          apply(historyEvent);
+        }
+      });
+    }
+  }
+
+  @Override
+  public void handleEvents(final List<HistoryEvent> historyEvents) {
+    for (final HistoryEvent historyEvent : historyEvents) {
+      handleEvent(historyEvent);
+    }
+  }
+
+  /**
+   * Checks if the process instance has passed (entered and left) the activity.
+   *
+   * @param processInstanceId
+   *          process instance id.
+   * @param activityId
+   *          activity id.
+   * @return true, if the activity has been passed.
+   */
+  public boolean hasPassed(final String processInstanceId, final String activityId) {
+    final InstanceTrace instance = instances.get(processInstanceId);
+    return instance != null && instance.hasPassed(activityId);
+  }
+
+  /**
+   * Checks if the process instance waits in the activity.
+   *
+   * @param processInstanceId
+   *          process instance id.
+   * @param activityId
+   *          activity id.
+   * @return true, if the activity has been entered and not yet left.
+   */
+  public boolean isActive(final String processInstanceId, final String activityId) {
+    final InstanceTrace instance = instances.get(processInstanceId);
+    return instance != null && instance.isActive(activityId);
+  }
+
+  /**
+   * Checks if the process instance has ended.
+   *
+   * @param processInstanceId
+   *          process instance id.
+   * @return true, if the end of the instance has been traced.
+   */
+  public boolean isEnded(final String processInstanceId) {
+    final InstanceTrace instance = instances.get(processInstanceId);
+    return instance != null && instance.isEnded();
+  }
+
+  /**
+   * Retrieves the activities passed by the process instance.
+   *
+   * @param processInstanceId
+   *          process instance id.
+   * @return ids of passed activities.
+   */
+  public Set<String> getPassedActivities(final String processInstanceId) {
+    final InstanceTrace instance = instances.get(processInstanceId);
+    return instance != null ? instance.passed() : Collections.<String> emptySet();
+  }
+
+  /**
+   * Retrieves the open user tasks of the process instance.
+   *
+   * @param processInstanceId
+   *          process instance id.
+   * @return ids of created and not yet completed tasks, in creation order.
+   */
+  public List<String> getOpenTasks(final String processInstanceId) {
+    return getOpenTasks(processInstanceId, null);
+  }
+
+  /**
+   * Retrieves the open user tasks of the process instance with given
+   * definition key.
+   *
+   * @param processInstanceId
+   *          process instance id.
+   * @param taskDefinitionKey
+   *          task definition key, null for all tasks.
+   * @return ids of created and not yet completed tasks, in creation order.
+   */
+  public List<String> getOpenTasks(final String processInstanceId, final String taskDefinitionKey) {
+    final InstanceTrace instance = instances.get(processInstanceId);
+    return instance != null ? instance.openTasks(taskDefinitionKey) : Collections.<String> emptyList();
+  }
+
+  /**
+   * Waits until the activity is entered by the process instance.
+   *
+   * @param processInstanceId
+   *          process instance id.
+   * @param activityId
+   *          activity id.
+   * @param timeout
+   *          maximum time to wait.
+   * @param unit
+   *          unit of the timeout.
+   * @return true, if the process instance waits in the activity, false if the
+   *         process instance ended or the timeout elapsed.
+   * @throws InterruptedException
+   *           if interrupted while waiting.
+   */
+  public boolean awaitActivity(final String processInstanceId, final String activityId, final long timeout, final TimeUnit unit)
+      throws InterruptedException {
+    return instance(processInstanceId).awaitActivity(activityId, unit.toMillis(timeout));
+  }
+
+  /**
+   * Waits until the process instance ends.
+   *
+   * @param processInstanceId
+   *          process instance id.
+   * @param timeout
+   *          maximum time to wait.
+   * @param unit
+   *          unit of the timeout.
+   * @return true, if the process instance ended, false if the timeout elapsed.
+   * @throws InterruptedException
+   *           if interrupted while waiting.
+   */
+  public boolean awaitEnd(final String processInstanceId, final long timeout, final TimeUnit unit) throws InterruptedException {
+    return instance(processInstanceId).awaitEnd(unit.toMillis(timeout));
+  }
+
+  /**
+   * Forgets all traced instances.
+   */
+  public void clear() {
+    instances.clear();
+  }
+
+  /**
+   * Copies the traced state.
+   *
+   * @return copy of the instance traces.
+   */
+  Map<String, InstanceTrace> snapshot() {
+    final Map<String, InstanceTrace> snapshot = Maps.newHashMap();
+    for (final Map.Entry<String, InstanceTrace> instance : instances.entrySet()) {
+      snapshot.put(instance.getKey(), instance.getValue().copy());
+    }
+    return snapshot;
+  }
+
+  /**
+   * Replaces the traced state, after the engine database has been restored.
+   *
+   * @param snapshot
+   *          instance traces.
+   */
+  void restore(final Map<String, InstanceTrace> snapshot) {
+    instances.clear();
+    for (final Map.Entry<String, InstanceTrace> instance : snapshot.entrySet()) {
+      instances.put(instance.getKey(), instance.getValue().copy());
+    }
+  }
+
+  private void apply(final HistoryEvent historyEvent) {
+    final InstanceTrace instance = instance(historyEvent.getProcessInstanceId());
+    if (historyEvent instanceof HistoricActivityInstanceEventEntity) {
+      final String activityId = ((HistoricActivityInstanceEventEntity) historyEvent).getActivityId();
+      if (START.equals(historyEvent.getEventType())) {
+        instance.started(activityId);
+      } else if (END.equals(historyEvent.getEventType())) {
+        instance.ended(activityId);
+      }
+    } else if (historyEvent instanceof HistoricTaskInstanceEventEntity) {
+      final HistoricTaskInstanceEventEntity task = (HistoricTaskInstanceEventEntity) historyEvent;
+      if (TASK_CREATE.equals(historyEvent.getEventType())) {
+        instance.taskCreated(task.getTaskId(), task.getTaskDefinitionKey());
+      } else if (TASK_COMPLETE.equals(historyEvent.getEventType()) || TASK_DELETE.equals(historyEvent.getEventType())) {
+        instance.taskEnded(task.getTaskId());
+      }
+    } else if (END.equals(historyEvent.getEventType())) {
+      instance.ended();
+    }
+  }
+
+  private InstanceTrace instance(final String processInstanceId) {
+    InstanceTrace instance = instances.get(processInstanceId);
+    if (instance == null) {
+      final InstanceTrace created = new InstanceTrace();
+      instance = instances.putIfAbsent(processInstanceId, created);
+      if (instance == null) {
+        instance = created;
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * Committed state of one process instance.
+   */
+  static class InstanceTrace {
+
+    private final Map<String, Integer> active = Maps.newHashMap();
+    private final Set<String> passed = Sets.newHashSet();
+    private final Map<String, String> tasks = Maps.newLinkedHashMap();
+    private boolean ended;
+
+    synchronized InstanceTrace copy() {
+      final InstanceTrace copy = new InstanceTrace();
+      copy.active.putAll(active);
+      copy.passed.addAll(passed);
+      copy.tasks.putAll(tasks);
+      copy.ended = ended;
+      return copy;
+    }
+
+    synchronized boolean hasPassed(final String activityId) {
+      return passed.contains(activityId);
+    }
+
+    synchronized boolean isActive(final String activityId) {
+      return active.containsKey(activityId);
+    }
+
+    synchronized boolean isEnded() {
+      return ended;
+    }
+
+    synchronized Set<String> passed() {
+      return ImmutableSet.copyOf(passed);
+    }
+
+    synchronized List<String> openTasks(final String taskDefinitionKey) {
+      final ImmutableList.Builder<String> taskIds = ImmutableList.builder();
+      for (final Map.Entry<String, String> task : tasks.entrySet()) {
+        if (taskDefinitionKey == null || taskDefinitionKey.equals(task.getValue())) {
+          taskIds.add(task.getKey());
+        }
+      }
+      return taskIds.build();
+    }
+
+    synchronized void taskCreated(final String taskId, final String taskDefinitionKey) {
+      tasks.put(taskId, taskDefinitionKey);
+    }
+
+    synchronized void taskEnded(final String taskId) {
+      tasks.remove(taskId);
+    }
+
+    synchronized void started(final String activityId) {
+      final Integer count = active.get(activityId);
+      active.put(activityId, count == null ? 1 : count + 1);
+      notifyAll();
+    }
+
+    synchronized void ended(final String activityId) {
+      final Integer count = active.get(activityId);
+      if (count == null || count <= 1) {
+        active.remove(activityId);
+      } else {
+        active.put(activityId, count - 1);
+      }
+      passed.add(activityId);
+      notifyAll();
+    }
+
+    synchronized void ended() {
+      ended = true;
+      active.clear();
+      tasks.clear();
+      notifyAll();
+    }
+
+    synchronized boolean awaitActivity(final String activityId, final long timeoutMillis) throws InterruptedException {
+      final long deadline = System.currentTimeMillis() + timeoutMillis;
+      long remaining = timeoutMillis;
+      while (!active.containsKey(activityId) && !ended && remaining > 0) {
+        wait(remaining);
+        remaining = deadline - System.currentTimeMillis();
+      }
+      return active.containsKey(activityId);
+    }
+
+    synchronized boolean awaitEnd(final long timeoutMillis) throws InterruptedException {
+      final long deadline = System.currentTimeMillis() + timeoutMillis;
+      long remaining = timeoutMillis;
+      while (!ended && remaining > 0) {
+        wait(remaining);
+        remaining = deadline - System.currentTimeMillis();
+      }
+      return ended;
+    }
+  }
+}
@@ -0,0 +1,156 @@
+package org.camunda.bpm.test;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+import org.camunda.bpm.engine.runtime.ProcessInstance;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+
+/**
+ * Registry of the process instances started by a story. <br />
+ * Instances are kept in start order and may be addressed by an alias or by the
+ * name of a group. Registration and lookup are safe for concurrent use.
+ *
+ * @author Simon Zambrovski, Holisticon AG
+ */
+public class ProcessInstanceRegistry {
+
+  private final Queue<ProcessInstance> instances = new ConcurrentLinkedQueue<ProcessInstance>();
+  private final ConcurrentMap<String, ProcessInstance> aliases = Maps.newConcurrentMap();
+  private final ConcurrentMap<String, Queue<ProcessInstance>> groups = Maps.newConcurrentMap();
+
+  /**
+   * Registers started process instances.
+   *
+   * @param started
+   *          process instances.
+   * @param group
+   *          name of the group to add the instances to, may be null.
+   */
+  public void register(final List<ProcessInstance> started, final String group) {
+    instances.addAll(started);
+    if (group != null) {
+      group(group).addAll(started);
+    }
+  }
+
+  /**
+   * Registers a started process instance.
+   *
+   * @param processInstance
+   *          process instance.
+   * @param group
+   *          name of the group to add the instance to, may be null.
+   */
+  public void register(final ProcessInstance processInstance, final String group) {
+    register(Collections.singletonList(processInstance), group);
+  }
+
+  /**
+   * Assigns an alias to a process instance, replacing a previous assignment.
+   *
+   * @param alias
+   *          alias.
+   * @param processInstance
+   *          process instance.
+   */
+  public void alias(final String alias, final ProcessInstance processInstance) {
+    checkArgument(alias != null, "alias must not be null!");
+    checkArgument(processInstance != null, "processInstance must not be null!");
+    aliases.put(alias, processInstance);
+  }
+
+  /**
+   * Retrieves the process instance by alias.
+   *
+   * @param alias
+   *          alias.
+   * @return process instance or null, if the alias is not assigned.
+   */
+  public ProcessInstance get(final String alias) {
+    return aliases.get(alias);
+  }
+
+  /**
+   * Retrieves all registered process instances.
+   *
+   * @return instances in start order.
+   */
+  public List<ProcessInstance> getAll() {
+    return ImmutableList.copyOf(instances);
+  }
+
+  /**
+   * Retrieves the process instances of a group.
+   *
+   * @param group
+   *          name of the group.
+   * @return instances in start order, empty if the group is unknown.
+   */
+  public List<ProcessInstance> getGroup(final String group) {
+    final Queue<ProcessInstance> members = groups.get(group);
+    return members != null ? ImmutableList.copyOf(members) : ImmutableList.<ProcessInstance> of();
+  }
+
+  /**
+   * Retrieves the names of all groups.
+   *
+   * @return group names.
+   */
+  public Set<String> getGroups() {
+    return ImmutableSet.copyOf(groups.keySet());
+  }
+
+  /**
+   * Retrieves the number of registered instances.
+   *
+   * @return number of instances.
+   */
+  public int size() {
+    return instances.size();
+  }
+
+  /**
+   * Adds the content of this registry to the target.
+   *
+   * @param target
+   *          registry to add to.
+   */
+  void addTo(final ProcessInstanceRegistry target) {
+    target.instances.addAll(instances);
+    target.aliases.putAll(aliases);
+    for (final String group : groups.keySet()) {
+      target.group(group).addAll(groups.get(group));
+    }
+  }
+
+  /**
+   * Removes all instances, aliases and groups.
+   */
+  void clear() {
+    instances.clear();
+    aliases.clear();
+    groups.clear();
+  }
+
+  private Queue<ProcessInstance> group(final String group) {
+    Queue<ProcessInstance> members = groups.get(group);
+    if (members == null) {
+      final Queue<ProcessInstance> created = new ConcurrentLinkedQueue<ProcessInstance>();
+      members = groups.putIfAbsent(group, created);
+      if (members == null) {
+        members = created;
+      }
+    }
+    return members;
+  }
+}
@@ -0,0 +1,62 @@
+package org.camunda.bpm.test;
+
+/**
+ * Outcome of one row run by {@link CamundaSupport#runRows(java.util.List, com.google.common.base.Function)}.
+ *
+ * @param <R>
+ *          type of the row value.
+ * @author Simon Zambrovski, Holisticon AG
+ */
+public class RowResult<R> {
+
+  private final int index;
+  private final R value;
+  private final Throwable failure;
+
+  RowResult(final int index, final R value, final Throwable failure) {
+    this.index = index;
+    this.value = value;
+    this.failure = failure;
+  }
+
+  /**
+   * Retrieves the position of the row.
+   *
+   * @return zero based row index.
+   */
+  public int getIndex() {
+    return index;
+  }
+
+  /**
+   * Retrieves the value computed for the row.
+   *
+   * @return value or null, if the row failed.
+   */
+  public R getValue() {
+    return value;
+  }
+
+  /**
+   * Retrieves the failure of the row.
+   *
+   * @return exception or error thrown by the row, null if the row succeeded.
+   */
+  public Throwable getFailure() {
+    return failure;
+  }
+
+  /**
+   * Checks if the row failed.
+   *
+   * @return true, if the row threw an exception or error.
+   */
+  public boolean isFailed() {
+    return failure != null;
+  }
+
+  @Override
+  public String toString() {
+    return isFailed() ? String.format("Row %d failed: %s", index + 1, failure.getMessage()) : String.format("Row %d: %s", index + 1, value);
+  }
+}
@@ -0,0 +1,49 @@
+package org.camunda.bpm.test;
+
+import java.util.List;
+import java.util.Map;
+
+import org.camunda.bpm.engine.RuntimeService;
+import org.camunda.bpm.engine.impl.interceptor.Command;
+import org.camunda.bpm.engine.impl.interceptor.CommandContext;
+import org.camunda.bpm.engine.runtime.ProcessInstance;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Starts several process instances in one command and thus in one
+ * transaction. The service calls reuse the command context of this command.
+ *
+ * @author Simon Zambrovski, Holisticon AG
+ */
+class StartProcessInstancesCmd implements Command<List<ProcessInstance>> {
+
+  private final RuntimeService runtimeService;
+  private final String processDefinitionKey;
+  private final List<Map<String, Object>> variables;
+
+  /**
+   * Creates the command.
+   *
+   * @param runtimeService
+   *          runtime service of the engine executing the command.
+   * @param processDefinitionKey
+   *          process definition key.
+   * @param variables
+   *          initial variables, one map (or null) per instance.
+   */
+  StartProcessInstancesCmd(final RuntimeService runtimeService, final String processDefinitionKey, final List<Map<String, Object>> variables) {
+    this.runtimeService = runtimeService;
+    this.processDefinitionKey = processDefinitionKey;
+    this.variables = variables;
+  }
+
+  @Override
+  public List<ProcessInstance> execute(final CommandContext commandContext) {
+    final List<ProcessInstance> instances = Lists.newArrayListWithCapacity(variables.size());
+    for (final Map<String, Object> instanceVariables : variables) {
+      instances.add(runtimeService.startProcessInstanceByKey(processDefinitionKey, instanceVariables));
+    }
+    return instances;
+  }
+}
@@ -0,0 +1,44 @@
+package org.camunda.bpm.test;
+
+import java.util.Date;
+import java.util.Set;
+
+import org.camunda.bpm.engine.ProcessEngine;
+import org.camunda.bpm.engine.runtime.ProcessInstance;
+
+import com.google.common.collect.Sets;
+
+/**
+ * State of {@link CamundaSupport} for one story. <br />
+ * JBehave executes a story completely on one thread, so the context is
+ * confined to the thread running the story and needs no synchronization.
+ *
+ * @author Simon Zambrovski, Holisticon AG
+ */
+class StoryContext {
+
+  final Set<String> deploymentIds = Sets.newHashSet();
+  final ProcessInstanceRegistry processInstances = new ProcessInstanceRegistry();
+
+  ProcessEngine processEngine;
+  boolean pooled;
+  ProcessEngineProfile profile;
+  ProcessInstance processInstance;
+  Date startTime;
+  ProcessEngineSnapshot snapshot;
+
+  /**
+   * Copies the state of the story, keeping the engine.
+   * 
+   * @param target
+   *          context to copy to.
+   */
+  void copyTo(final StoryContext target) {
+    target.deploymentIds.clear();
+    target.deploymentIds.addAll(deploymentIds);
+    target.processInstances.clear();
+    processInstances.addTo(target.processInstances);
+    target.processInstance = processInstance;
+    target.startTime = startTime;
+  }
+}
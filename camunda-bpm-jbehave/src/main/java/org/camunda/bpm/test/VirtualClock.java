@@ -0,0 +1,183 @@
+package org.camunda.bpm.test;
+
+import java.util.Date;
+import java.util.Map;
+
+import org.camunda.bpm.engine.impl.interceptor.Command;
+import org.camunda.bpm.engine.impl.interceptor.CommandInterceptor;
+import org.camunda.bpm.engine.impl.util.ClockUtil;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.Maps;
+
+/**
+ * Clock of one process engine. <br />
+ * The engine reads the time from the JVM-wide {@link ClockUtil}. The virtual
+ * clock pins {@link ClockUtil} to its time only while a command of its engine
+ * is executed. Commands of engines with the same time, virtual or real, are
+ * executed concurrently. Only commands of engines with different times
+ * exclude each other, because Camunda offers no per-engine clock. This way
+ * stories travelling in time can share a JVM with other stories. <br />
+ * A time set on {@link ClockUtil} directly, e.g. for engines without the
+ * {@link VirtualClockPlugin}, is saved and restored around virtual commands.
+ *
+ * @author Simon Zambrovski, Holisticon AG
+ * @see VirtualClockPlugin
+ */
+public class VirtualClock {
+
+  private static final TimeLock LOCK = new TimeLock();
+  private static final ThreadLocal<Boolean> IN_COMMAND = new ThreadLocal<Boolean>();
+
+  private volatile Date currentTime;
+
+  /**
+   * Sets the time of the engine.
+   *
+   * @param currentTime
+   *          time to use, null to use the real time.
+   */
+  public void setCurrentTime(final Date currentTime) {
+    this.currentTime = currentTime != null ? new Date(currentTime.getTime()) : null;
+  }
+
+  /**
+   * Resets the clock to the real time.
+   */
+  public void reset() {
+    this.currentTime = null;
+  }
+
+  /**
+   * Retrieves current time of the engine.
+   *
+   * @return virtual time or the real time, if no time is set.
+   */
+  public Date getCurrentTime() {
+    final Date time = currentTime;
+    return time != null ? new Date(time.getTime()) : new Date();
+  }
+
+  /**
+   * Checks if the clock has a virtual time.
+   *
+   * @return true, if the time is set.
+   */
+  public boolean isSet() {
+    return currentTime != null;
+  }
+
+  /**
+   * Creates the interceptor applying the clock to the commands of the engine.
+   *
+   * @return command interceptor.
+   */
+  CommandInterceptor interceptor() {
+    return new CommandInterceptor() {
+      @Override
+      public <T> T execute(final Command<T> command) {
+        return VirtualClock.this.execute(getNext(), command);
+      }
+    };
+  }
+
+  private <T> T execute(final CommandInterceptor next, final Command<T> command) {
+    if (IN_COMMAND.get() != null) {
+      // nested command, clock is already applied
+      return next.execute(command);
+    }
+
+    final Date time = currentTime;
+    LOCK.acquire(time);
+    IN_COMMAND.set(Boolean.TRUE);
+    try {
+      return next.execute(command);
+    } finally {
+      IN_COMMAND.remove();
+      LOCK.release();
+    }
+  }
+
+  /**
+   * Lock shared by commands of the same time. The first command of a virtual
+   * time pins {@link ClockUtil}, the last one restores the previous time.
+   * Commands of another time wait until the running ones are done, new
+   * commands of the running time wait while commands of another time wait.
+   */
+  private static class TimeLock {
+
+    private final Map<Long, Integer> waiting = Maps.newHashMap();
+    private int waitingTotal;
+    private int active;
+    private Long activeTime;
+    private Date savedTime;
+
+    synchronized void acquire(final Date time) {
+      final Long key = time != null ? time.getTime() : null;
+      boolean interrupted = false;
+      if (!canEnter(key)) {
+        waiting.put(key, count(key) + 1);
+        waitingTotal++;
+        try {
+          while (!canEnter(key)) {
+            try {
+              wait();
+            } catch (final InterruptedException e) {
+              interrupted = true;
+            }
+          }
+        } finally {
+          waiting.put(key, count(key) - 1);
+          waitingTotal--;
+        }
+      }
+      if (active == 0) {
+        activeTime = key;
+        if (key != null) {
+          savedTime = pinnedTime();
+          ClockUtil.setCurrentTime(new Date(key));
+        }
+      }
+      active++;
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    synchronized void release() {
+      active--;
+      if (active == 0) {
+        if (activeTime != null) {
+          if (savedTime != null) {
+            ClockUtil.setCurrentTime(savedTime);
+          } else {
+            ClockUtil.reset();
+          }
+          savedTime = null;
+        }
+        notifyAll();
+      }
+    }
+
+    private boolean canEnter(final Long key) {
+      if (active == 0) {
+        return true;
+      }
+      return Objects.equal(activeTime, key) && waitingTotal == count(key);
+    }
+
+    private int count(final Long key) {
+      final Integer count = waiting.get(key);
+      return count != null ? count : 0;
+    }
+
+    /**
+     * Retrieves the time pinned on {@link ClockUtil}. A pinned time is returned
+     * as the same instance, the real time as a new one on every call.
+     */
+    private static Date pinnedTime() {
+      final Date time = ClockUtil.getCurrentTime();
+      return time == ClockUtil.getCurrentTime() ? new Date(time.getTime()) : null;
+    }
+  }
+}
@@ -0,0 +1,53 @@
+package org.camunda.bpm.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.camunda.bpm.engine.ProcessEngine;
+import org.camunda.bpm.engine.impl.cfg.AbstractProcessEnginePlugin;
+import org.camunda.bpm.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.camunda.bpm.engine.impl.interceptor.CommandInterceptor;
+import org.camunda.bpm.util.ProcessEnginePlugins;
+
+/**
+ * Process engine plugin installing a {@link VirtualClock} on the engine.
+ *
+ * @author Simon Zambrovski, Holisticon AG
+ */
+public class VirtualClockPlugin extends AbstractProcessEnginePlugin {
+
+  private final VirtualClock clock = new VirtualClock();
+
+  /**
+   * Retrieves the clock of the engine.
+   *
+   * @param processEngine
+   *          process engine.
+   * @return clock or null, if the engine has been built without the plugin.
+   */
+  public static VirtualClock clockOf(final ProcessEngine processEngine) {
+    final VirtualClockPlugin plugin = ProcessEnginePlugins.find(processEngine, VirtualClockPlugin.class);
+    return plugin != null ? plugin.getClock() : null;
+  }
+
+  @Override
+  public void preInit(final ProcessEngineConfigurationImpl configuration) {
+    configuration.setCustomPreCommandInterceptorsTxRequired(withClock(configuration.getCustomPreCommandInterceptorsTxRequired()));
+    configuration.setCustomPreCommandInterceptorsTxNotRequired(withClock(configuration.getCustomPreCommandInterceptorsTxNotRequired()));
+  }
+
+  /**
+   * Retrieves the clock.
+   *
+   * @return clock of the engine.
+   */
+  public VirtualClock getClock() {
+    return clock;
+  }
+
+  private List<CommandInterceptor> withClock(final List<CommandInterceptor> interceptors) {
+    final List<CommandInterceptor> result = interceptors != null ? interceptors : new ArrayList<CommandInterceptor>();
+    result.add(0, clock.interceptor());
+    return result;
+  }
+}
@@ -0,0 +1,124 @@
+package org.camunda.bpm.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies with microsecond resolution. <br />
+ * Values are counted in log-linear buckets (32 buckets per power of two), so
+ * percentiles are reported with a relative error of at most 1/32 (about 3.1%).
+ * Recording is lock-free and allocation-free and may be done by many threads
+ * concurrently.
+ *
+ * @author Simon Zambrovski, Holisticon AG
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final double MICROS_PER_MILLI = 1000.0;
+
+  private final AtomicLongArray buckets = new AtomicLongArray((Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong totalMicros = new AtomicLong();
+  private final AtomicLong maxMicros = new AtomicLong();
+
+  /**
+   * Records a latency.
+   *
+   * @param duration
+   *          latency.
+   * @param unit
+   *          unit of the latency.
+   */
+  public void record(final long duration, final TimeUnit unit) {
+    final long micros = Math.max(0, unit.toMicros(duration));
+    buckets.incrementAndGet(index(micros));
+    count.incrementAndGet();
+    totalMicros.addAndGet(micros);
+    long max = maxMicros.get();
+    while (micros > max && !maxMicros.compareAndSet(max, micros)) {
+      max = maxMicros.get();
+    }
+  }
+
+  /**
+   * Retrieves the number of recorded latencies.
+   *
+   * @return number of values.
+   */
+  public long getCount() {
+    return count.get();
+  }
+
+  /**
+   * Retrieves the mean latency.
+   *
+   * @return mean in milliseconds, 0 if nothing has been recorded.
+   */
+  public double getMeanMillis() {
+    final long recorded = count.get();
+    return recorded > 0 ? totalMicros.get() / MICROS_PER_MILLI / recorded : 0;
+  }
+
+  /**
+   * Retrieves the maximum latency.
+   *
+   * @return maximum in milliseconds.
+   */
+  public double getMaxMillis() {
+    return maxMicros.get() / MICROS_PER_MILLI;
+  }
+
+  /**
+   * Retrieves the latency below or at which the given percentage of the
+   * recorded latencies lie.
+   *
+   * @param percentile
+   *          percentile between 0 and 100, e.g. 99.
+   * @return latency in milliseconds, 0 if nothing has been recorded.
+   */
+  public double getPercentileMillis(final double percentile) {
+    checkArgument(percentile >= 0 && percentile <= 100, "percentile must be between 0 and 100!");
+    final long recorded = count.get();
+    if (recorded == 0) {
+      return 0;
+    }
+    final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * recorded));
+    long seen = 0;
+    for (int i = 0; i < buckets.length(); i++) {
+      seen += buckets.get(i);
+      if (seen >= rank) {
+        return Math.min(upperBound(i), maxMicros.get()) / MICROS_PER_MILLI;
+      }
+    }
+    return getMaxMillis();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("count=%d, mean=%.3f ms, p50=%.3f ms, p90=%.3f ms, p99=%.3f ms, max=%.3f ms", getCount(), getMeanMillis(),
+        getPercentileMillis(50), getPercentileMillis(90), getPercentileMillis(99), getMaxMillis());
+  }
+
+  static int index(final long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    final int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    final int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+    return (shift + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  static long upperBound(final int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    final int shift = index / SUB_BUCKETS - 1;
+    final long subBucket = index % SUB_BUCKETS;
+    return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+  }
+}
@@ -0,0 +1,49 @@
+package org.camunda.bpm.util;
+
+import org.camunda.bpm.engine.ProcessEngine;
+import org.camunda.bpm.engine.impl.ProcessEngineImpl;
+import org.camunda.bpm.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.camunda.bpm.engine.impl.cfg.ProcessEnginePlugin;
+
+/**
+ * Utility for access to the plugins of a process engine.
+ *
+ * @author Simon Zambrovski, Holisticon AG
+ */
+public final class ProcessEnginePlugins {
+
+  private ProcessEnginePlugins() {
+    // no instances
+  }
+
+  /**
+   * Retrieves the configuration of the engine.
+   *
+   * @param processEngine
+   *          process engine.
+   * @return configuration the engine has been built from.
+   */
+  public static ProcessEngineConfigurationImpl configuration(final ProcessEngine processEngine) {
+    return ((ProcessEngineImpl) processEngine).getProcessEngineConfiguration();
+  }
+
+  /**
+   * Retrieves the plugin of given type registered on the engine.
+   *
+   * @param processEngine
+   *          process engine.
+   * @param pluginType
+   *          type of the plugin.
+   * @return plugin or null, if the engine has been built without it.
+   */
+  public static <T extends ProcessEnginePlugin> T find(final ProcessEngine processEngine, final Class<T> pluginType) {
+    if (processEngine instanceof ProcessEngineImpl) {
+      for (final ProcessEnginePlugin plugin : configuration(processEngine).getProcessEnginePlugins()) {
+        if (pluginType.isInstance(plugin)) {
+          return pluginType.cast(plugin);
+        }
+      }
+    }
+    return null;
+  }
+}
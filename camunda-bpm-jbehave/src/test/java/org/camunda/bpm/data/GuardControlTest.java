@@ -0,0 +1,151 @@
+package org.camunda.bpm.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.camunda.bpm.engine.ProcessEngine;
+import org.camunda.bpm.engine.runtime.ProcessInstance;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+/**
+ * Test of the engine level switch of the guards.
+ *
+ * @author Simon Zambrovski, holisticon AG
+ */
+public class GuardControlTest {
+
+  private static final int INSTANCES = 200;
+  private static final Map<String, Object> SKIP_GUARDS = ImmutableMap.<String, Object> of(Guards.VARIABLE_SKIP_GUARDS, Boolean.TRUE);
+
+  private ProcessEngine processEngine;
+  private GuardControl control;
+  private final RecordingGuard guard = new RecordingGuard();
+
+  @Before
+  public void deployGuardedProcess() {
+    processEngine = GuardedEngines.borrow();
+    control = GuardControlPlugin.controlOf(processEngine);
+    GuardParsePlugin.registryOf(processEngine).register("task", guard);
+    GuardedEngines.deploy(processEngine);
+  }
+
+  @After
+  public void releaseEngine() {
+    GuardedEngines.release(processEngine);
+  }
+
+  @Test
+  public void checks_all_instances_by_default() {
+    startInstances();
+
+    assertEquals(INSTANCES, guard.getChecks().size());
+  }
+
+  @Test
+  public void disables_guards_of_engine() {
+    control.setEnabled(false);
+
+    startInstances();
+
+    assertTrue(guard.getChecks().isEmpty());
+  }
+
+  @Test
+  public void guard_class_setting_overrides_engine_setting() {
+    control.setEnabled(false).setEnabled(RecordingGuard.class, true);
+
+    startInstances();
+
+    assertEquals(INSTANCES, guard.getChecks().size());
+  }
+
+  @Test
+  public void process_definition_setting_overrides_engine_setting() {
+    control.setEnabled(GuardedEngines.PROCESS, false);
+
+    startInstances();
+
+    assertTrue(guard.getChecks().isEmpty());
+  }
+
+  @Test
+  public void checks_sampled_instance_on_every_activity() {
+    control.setSamplingRate(0.5);
+    final List<ProcessInstance> processInstances = startInstances();
+    final int sampled = guard.getChecks().size();
+    assertTrue(sampled > 0 && sampled < INSTANCES);
+
+    for (final ProcessInstance processInstance : processInstances) {
+      GuardedEngines.completeTask(processEngine, processInstance);
+    }
+
+    assertEquals(2 * sampled, guard.getChecks().size());
+  }
+
+  @Test
+  public void checks_no_instance_with_sampling_rate_zero() {
+    control.setSamplingRate(0);
+
+    startInstances();
+
+    assertTrue(guard.getChecks().isEmpty());
+  }
+
+  @Test
+  public void ignores_skip_variable_by_default() {
+    processEngine.getRuntimeService().startProcessInstanceByKey(GuardedEngines.PROCESS, SKIP_GUARDS);
+
+    assertEquals(1, guard.getChecks().size());
+  }
+
+  @Test
+  public void honors_skip_variable_if_enabled() {
+    control.setSkipVariableHonored(true);
+
+    processEngine.getRuntimeService().startProcessInstanceByKey(GuardedEngines.PROCESS, SKIP_GUARDS);
+
+    assertTrue(guard.getChecks().isEmpty());
+  }
+
+  @Test
+  public void reset_restores_defaults() {
+    control.setEnabled(false).setEnabled(GuardedEngines.PROCESS, false).setEnabled(RecordingGuard.class, false).setSamplingRate(0.1)
+        .setSkipVariableHonored(true);
+
+    control.reset();
+
+    assertTrue(control.isEnabled());
+    assertEquals(1, control.getSamplingRate(), 0);
+    assertFalse(control.isSkipVariableHonored());
+    startInstances();
+    assertEquals(INSTANCES, guard.getChecks().size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejects_sampling_rate_above_one() {
+    control.setSamplingRate(1.5);
+  }
+
+  @Test
+  public void is_not_current_outside_of_commands() {
+    assertNull(GuardControl.current());
+  }
+
+  private List<ProcessInstance> startInstances() {
+    final List<ProcessInstance> processInstances = Lists.newArrayListWithCapacity(INSTANCES);
+    for (int i = 0; i < INSTANCES; i++) {
+      processInstances.add(GuardedEngines.start(processEngine));
+    }
+    return processInstances;
+  }
+}
@@ -0,0 +1,96 @@
+package org.camunda.bpm.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.camunda.bpm.engine.ProcessEngine;
+import org.camunda.bpm.engine.runtime.ProcessInstance;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Sets;
+
+/**
+ * Test of the guards attached by the {@link GuardParsePlugin}.
+ *
+ * @author Simon Zambrovski, holisticon AG
+ */
+public class GuardParsePluginTest {
+
+  private ProcessEngine processEngine;
+  private GuardRegistry registry;
+  private final RecordingGuard guard = new RecordingGuard();
+
+  @Before
+  public void borrowEngine() {
+    processEngine = GuardedEngines.borrow();
+    registry = GuardParsePlugin.registryOf(processEngine);
+  }
+
+  @After
+  public void releaseEngine() {
+    GuardedEngines.release(processEngine);
+  }
+
+  @Test
+  public void attaches_guard_to_activity() {
+    registry.register("task", guard);
+    GuardedEngines.deploy(processEngine);
+
+    final ProcessInstance processInstance = GuardedEngines.start(processEngine);
+    assertEquals(Arrays.asList("task:pre"), guard.getChecks());
+
+    GuardedEngines.completeTask(processEngine, processInstance);
+    assertEquals(Arrays.asList("task:pre", "task:post"), guard.getChecks());
+  }
+
+  @Test
+  public void attaches_guard_to_boundary_event() {
+    registry.register("timeout", guard);
+    GuardedEngines.deploy(processEngine);
+    GuardedEngines.start(processEngine);
+
+    processEngine.getManagementService().executeJob(processEngine.getManagementService().createJobQuery().singleResult().getId());
+
+    assertEquals(Arrays.asList("timeout:pre", "timeout:post"), guard.getChecks());
+  }
+
+  @Test
+  public void attaches_guard_to_event_based_gateway() {
+    registry.register("gateway", guard);
+    registry.register("proceed", guard);
+    GuardedEngines.deploy(processEngine);
+    final ProcessInstance processInstance = GuardedEngines.start(processEngine);
+
+    GuardedEngines.completeTask(processEngine, processInstance);
+    assertTrue(guard.getChecks().contains("gateway:pre"));
+
+    processEngine.getRuntimeService().correlateMessage("proceed");
+    assertEquals(Sets.newHashSet("gateway:pre", "gateway:post", "proceed:pre", "proceed:post"), Sets.newHashSet(guard.getChecks()));
+  }
+
+  @Test
+  public void attaches_guard_by_pattern() {
+    registry.registerPattern("t.*", guard);
+    GuardedEngines.deploy(processEngine);
+    GuardedEngines.start(processEngine);
+
+    processEngine.getManagementService().executeJob(processEngine.getManagementService().createJobQuery().singleResult().getId());
+
+    assertEquals(Sets.newHashSet("task:pre", "task:post", "timeout:pre", "timeout:post", "timed_out:pre", "timed_out:post"),
+        Sets.newHashSet(guard.getChecks()));
+  }
+
+  @Test
+  public void does_not_attach_guards_registered_after_deployment() {
+    GuardedEngines.deploy(processEngine);
+    registry.register("task", guard);
+
+    GuardedEngines.start(processEngine);
+
+    assertTrue(guard.getChecks().isEmpty());
+  }
+}
@@ -0,0 +1,66 @@
+package org.camunda.bpm.data;
+
+import org.camunda.bpm.engine.ProcessEngine;
+import org.camunda.bpm.engine.ProcessEngineConfiguration;
+import org.camunda.bpm.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.camunda.bpm.engine.runtime.ProcessInstance;
+import org.camunda.bpm.test.ProcessEnginePool;
+import org.camunda.bpm.test.ProcessEngineProfile;
+import org.camunda.bpm.test.ProcessEngineTruncation;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Pooled lean engines with the {@link GuardParsePlugin} and the
+ * {@link GuardControlPlugin}, used by the guard tests.
+ *
+ * @author Simon Zambrovski, holisticon AG
+ */
+final class GuardedEngines {
+
+  static final String PROCESS = "guarded";
+  static final String RESOURCE = "org/camunda/bpm/data/guarded.bpmn";
+
+  private static final String KEY = "guarded";
+
+  private static final Supplier<ProcessEngineConfiguration> CONFIGURATION = new Supplier<ProcessEngineConfiguration>() {
+    @Override
+    public ProcessEngineConfiguration get() {
+      final ProcessEngineConfigurationImpl configuration = (ProcessEngineConfigurationImpl) ProcessEngineProfile.LEAN.get();
+      configuration.getProcessEnginePlugins().add(new GuardParsePlugin());
+      configuration.getProcessEnginePlugins().add(new GuardControlPlugin());
+      return configuration;
+    }
+  };
+
+  private GuardedEngines() {
+    // utility
+  }
+
+  static ProcessEngine borrow() {
+    return ProcessEnginePool.borrow(KEY, CONFIGURATION);
+  }
+
+  /**
+   * Deploys the guarded process, after the guards have been registered.
+   */
+  static void deploy(final ProcessEngine processEngine) {
+    processEngine.getRepositoryService().createDeployment().addClasspathResource(RESOURCE).deploy();
+  }
+
+  static ProcessInstance start(final ProcessEngine processEngine) {
+    return processEngine.getRuntimeService().startProcessInstanceByKey(PROCESS);
+  }
+
+  static void completeTask(final ProcessEngine processEngine, final ProcessInstance processInstance) {
+    processEngine.getTaskService().complete(
+        processEngine.getTaskService().createTaskQuery().processInstanceId(processInstance.getId()).singleResult().getId());
+  }
+
+  static void release(final ProcessEngine processEngine) {
+    GuardParsePlugin.registryOf(processEngine).clear();
+    GuardControlPlugin.controlOf(processEngine).reset();
+    ProcessEngineTruncation.truncateAll(processEngine);
+    ProcessEnginePool.release(processEngine);
+  }
+}
@@ -0,0 +1,87 @@
+package org.camunda.bpm.data;
+
+import java.util.concurrent.TimeUnit;
+
+import org.camunda.bpm.engine.delegate.DelegateExecution;
+import org.camunda.bpm.engine.delegate.ExecutionListener;
+import org.camunda.bpm.engine.impl.pvm.runtime.ExecutionImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Micro benchmark of the guard dispatch per listener event. <br />
+ * The execution is a three level scope hierarchy of in-memory PVM executions,
+ * the guard checks three variables set on the root scope. Run with the GC
+ * profiler to verify that passing checks do not allocate:
+ * 
+ * <pre>
+ * java -cp &lt;test classpath&gt; org.openjdk.jmh.Main GuardsBenchmark -prof gc
+ * </pre>
+ * 
+ * @author Simon Zambrovski, Holisticon AG
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GuardsBenchmark {
+
+  private static final String[] VARIABLES = { "contract", "customer", "amount" };
+
+  private final Guard guard = new ActivityGuard() {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public void checkPreconditions(final DelegateExecution execution) {
+      for (final String variable : VARIABLES) {
+        Guards.checkIsSet(execution, variable);
+      }
+    }
+
+    @Override
+    public void checkPostconditions(final DelegateExecution execution) {
+      for (final String variable : VARIABLES) {
+        Guards.checkIsSetGlobal(execution, variable);
+      }
+    }
+  };
+
+  private ExecutionImpl execution;
+
+  @Setup
+  public void setUp() {
+    final ExecutionImpl root = new ExecutionImpl();
+    for (final String variable : VARIABLES) {
+      root.setVariable(variable, variable);
+    }
+    final ExecutionImpl scope = new ExecutionImpl();
+    scope.setParent(root);
+    execution = new ExecutionImpl();
+    execution.setParent(scope);
+  }
+
+  @Benchmark
+  public void dispatchStart() {
+    Guards.dispatch(guard, ExecutionListener.EVENTNAME_START, execution);
+  }
+
+  @Benchmark
+  public void dispatchEnd() {
+    Guards.dispatch(guard, ExecutionListener.EVENTNAME_END, execution);
+  }
+
+  @Benchmark
+  public void dispatchTake() {
+    Guards.dispatch(guard, ExecutionListener.EVENTNAME_TAKE, execution);
+  }
+}
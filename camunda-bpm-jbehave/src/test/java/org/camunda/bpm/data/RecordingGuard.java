@@ -0,0 +1,31 @@
+package org.camunda.bpm.data;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.camunda.bpm.engine.delegate.DelegateExecution;
+
+/**
+ * Guard recording the checked activities as "activityId:pre" and
+ * "activityId:post".
+ *
+ * @author Simon Zambrovski, holisticon AG
+ */
+class RecordingGuard implements Guard {
+
+  private final List<String> checks = new CopyOnWriteArrayList<String>();
+
+  @Override
+  public void checkPreconditions(final DelegateExecution delegateExecution) throws IllegalStateException {
+    checks.add(delegateExecution.getCurrentActivityId() + ":pre");
+  }
+
+  @Override
+  public void checkPostconditions(final DelegateExecution delegateExecution) throws IllegalStateException {
+    checks.add(delegateExecution.getCurrentActivityId() + ":post");
+  }
+
+  List<String> getChecks() {
+    return checks;
+  }
+}
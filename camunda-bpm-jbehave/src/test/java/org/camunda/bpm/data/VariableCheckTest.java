@@ -0,0 +1,122 @@
+package org.camunda.bpm.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.camunda.bpm.engine.ProcessEngine;
+import org.camunda.bpm.engine.variable.Variables;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Throwables;
+
+/**
+ * Test of the compiled variable checks, run by a guard on the user task of the
+ * guarded process.
+ *
+ * @author Simon Zambrovski, holisticon AG
+ */
+public class VariableCheckTest {
+
+  private ProcessEngine processEngine;
+
+  /**
+   * Guard requiring variables on task start.
+   */
+  @GuardVariables(preconditions = { "customer", "amount" })
+  public static class RequiringGuard extends ActivityGuard {
+    private static final long serialVersionUID = 1L;
+  }
+
+  @Before
+  public void deployGuardedProcess() {
+    processEngine = GuardedEngines.borrow();
+    GuardParsePlugin.registryOf(processEngine).register("task", new RequiringGuard());
+    GuardedEngines.deploy(processEngine);
+  }
+
+  @After
+  public void releaseEngine() {
+    GuardedEngines.release(processEngine);
+  }
+
+  @Test
+  public void passes_with_all_variables_set() {
+    start(Variables.createVariables().putValue("customer", "Jim").putValue("amount", 1));
+
+    assertEquals(1, processEngine.getTaskService().createTaskQuery().count());
+  }
+
+  @Test
+  public void reports_all_missing_variables() {
+    final String message = violation(Variables.createVariables());
+
+    assertTrue(message, message.contains("'task'"));
+    assertTrue(message, message.contains("'customer', 'amount'"));
+  }
+
+  @Test
+  public void treats_null_value_as_missing() {
+    final String message = violation(Variables.createVariables().putValue("customer", null).putValue("amount", 1));
+
+    assertTrue(message, message.contains("'customer'"));
+    assertFalse(message, message.contains("amount"));
+  }
+
+  @Test
+  public void builds_empty_check() {
+    assertSame(VariableCheck.NONE, VariableCheck.builder().build());
+    assertTrue(VariableCheck.NONE.isEmpty());
+  }
+
+  @Test
+  public void keeps_declaration_order_without_duplicates() {
+    final VariableCheck check = VariableCheck.builder().isSet("b", "a").isSet("b", "c").isSetLocal("d").build();
+
+    assertEquals(Arrays.asList("b", "a", "c"), check.getVariables());
+    assertEquals(Arrays.asList("d"), check.getLocalVariables());
+    assertFalse(check.isEmpty());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejects_null_name() {
+    VariableCheck.builder().isSet((String) null);
+  }
+
+  @Test
+  public void compiles_declaration_once() {
+    final GuardSpec spec = GuardSpec.forClass(RequiringGuard.class);
+
+    assertSame(spec, GuardSpec.forClass(RequiringGuard.class));
+    assertEquals(Arrays.asList("customer", "amount"), spec.getPreconditions().getVariables());
+    assertTrue(spec.getPostconditions().isEmpty());
+  }
+
+  private void start(final Map<String, Object> variables) {
+    processEngine.getRuntimeService().startProcessInstanceByKey(GuardedEngines.PROCESS, variables);
+  }
+
+  /**
+   * Starts the process expecting a violation of the guard.
+   *
+   * @return message of the violation.
+   */
+  private String violation(final Map<String, Object> variables) {
+    try {
+      start(variables);
+    } catch (final RuntimeException e) {
+      final Throwable cause = Throwables.getRootCause(e);
+      assertTrue(cause.toString(), cause instanceof IllegalStateException);
+      return cause.getMessage();
+    }
+    fail("Guard must be violated.");
+    return null;
+  }
+}
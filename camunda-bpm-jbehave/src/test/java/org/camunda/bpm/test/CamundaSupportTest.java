@@ -0,0 +1,66 @@
+package org.camunda.bpm.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.camunda.bpm.engine.ProcessEngine;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test of the engine selection of a story by {@link CamundaSupport}.
+ *
+ * @author Simon Zambrovski, Holisticon AG
+ */
+public class CamundaSupportTest {
+
+  private final CamundaSupport support = new CamundaSupport(ProcessEngineProfile.DEFAULT);
+
+  @After
+  public void cleanUp() {
+    support.undeploy();
+  }
+
+  @Test
+  public void borrows_engine_of_support_profile() {
+    assertEquals(ProcessEngineProfile.DEFAULT.name(), ProcessEnginePool.keyOf(support.getProcessEngine()));
+  }
+
+  @Test
+  public void story_meta_changes_borrowed_engine() {
+    // another step class used the engine before the meta has been applied
+    final ProcessEngine borrowed = support.getProcessEngine();
+
+    support.useProfile(ProcessEngineProfile.parse("lean"));
+
+    final ProcessEngine processEngine = support.getProcessEngine();
+    assertEquals(ProcessEngineProfile.LEAN.name(), ProcessEnginePool.keyOf(processEngine));
+    assertEquals(ProcessEngineProfile.DEFAULT.name(), ProcessEnginePool.keyOf(borrowed));
+  }
+
+  @Test
+  public void story_meta_of_same_profile_keeps_engine() {
+    final ProcessEngine borrowed = support.getProcessEngine();
+
+    support.useProfile(ProcessEngineProfile.DEFAULT);
+
+    assertSame(borrowed, support.getProcessEngine());
+  }
+
+  @Test
+  public void story_without_meta_returns_to_support_profile() {
+    support.useProfile(ProcessEngineProfile.LEAN);
+    support.getProcessEngine();
+
+    support.useProfile(null);
+
+    assertEquals(ProcessEngineProfile.DEFAULT.name(), ProcessEnginePool.keyOf(support.getProcessEngine()));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void rejects_profile_change_after_deployment() {
+    support.deploy("org/camunda/bpm/test/user_task.bpmn");
+
+    support.useProfile(ProcessEngineProfile.LEAN);
+  }
+}
@@ -0,0 +1,89 @@
+package org.camunda.bpm.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.camunda.bpm.engine.ProcessEngine;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of the reuse of deployments with the same content.
+ *
+ * @author Simon Zambrovski, Holisticon AG
+ */
+public class DeploymentCacheTest {
+
+  private static final String RESOURCE = "org/camunda/bpm/test/user_task.bpmn";
+
+  private ProcessEngine processEngine;
+  private DeploymentCache cache;
+
+  @Before
+  public void borrowEngine() {
+    processEngine = ProcessEnginePool.borrow(ProcessEngineProfile.LEAN.name(), ProcessEngineProfile.LEAN);
+    cache = DeploymentCache.forEngine(processEngine);
+  }
+
+  @After
+  public void releaseEngine() {
+    ProcessEngineTruncation.truncateAll(processEngine);
+    ProcessEnginePool.release(processEngine);
+  }
+
+  @Test
+  public void returns_cache_of_engine() {
+    assertSame(cache, DeploymentCache.forEngine(processEngine));
+  }
+
+  @Test
+  public void deploys_same_content_once() {
+    final String deploymentId = cache.deploy(RESOURCE);
+
+    assertEquals(deploymentId, cache.deploy(RESOURCE));
+    assertEquals(1, processEngine.getRepositoryService().createDeploymentQuery().count());
+    assertTrue(cache.getDeploymentIds().contains(deploymentId));
+  }
+
+  @Test
+  public void deploys_again_after_invalidation() {
+    final String deploymentId = cache.deploy(RESOURCE);
+
+    cache.invalidate();
+
+    assertFalse(deploymentId.equals(cache.deploy(RESOURCE)));
+    assertEquals(2, processEngine.getRepositoryService().createDeploymentQuery().count());
+  }
+
+  @Test
+  public void deploys_again_after_truncation() {
+    final String deploymentId = cache.deploy(RESOURCE);
+
+    ProcessEngineTruncation.truncateAll(processEngine);
+
+    assertTrue(cache.getDeploymentIds().isEmpty());
+    assertFalse(deploymentId.equals(cache.deploy(RESOURCE)));
+    assertEquals(1, processEngine.getRepositoryService().createDeploymentQuery().count());
+  }
+
+  @Test
+  public void clear_deletes_deployments() {
+    cache.deploy(RESOURCE);
+    processEngine.getRuntimeService().startProcessInstanceByKey("user_task");
+
+    cache.clear();
+
+    assertTrue(cache.getDeploymentIds().isEmpty());
+    assertEquals(0, processEngine.getRepositoryService().createDeploymentQuery().count());
+    assertEquals(0, processEngine.getRuntimeService().createProcessInstanceQuery().count());
+  }
+
+  @Test
+  public void hash_separates_name_and_content() {
+    assertEquals(DeploymentCache.hash(RESOURCE), DeploymentCache.hash(RESOURCE));
+    assertFalse(DeploymentCache.hash(RESOURCE).equals(DeploymentCache.hash(RESOURCE, RESOURCE)));
+  }
+}
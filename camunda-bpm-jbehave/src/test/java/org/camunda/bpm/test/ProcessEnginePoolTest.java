@@ -0,0 +1,99 @@
+package org.camunda.bpm.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.camunda.bpm.engine.ProcessEngine;
+import org.camunda.bpm.engine.ProcessEngineConfiguration;
+import org.junit.Test;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Test of borrowing, releasing and warming up pooled engines.
+ *
+ * @author Simon Zambrovski, Holisticon AG
+ */
+public class ProcessEnginePoolTest {
+
+  /**
+   * Configuration failing the test, if the pool builds a new engine.
+   */
+  private static final Supplier<ProcessEngineConfiguration> NOT_BUILT = new Supplier<ProcessEngineConfiguration>() {
+    @Override
+    public ProcessEngineConfiguration get() {
+      throw new AssertionError("Engine must not be built.");
+    }
+  };
+
+  @Test
+  public void borrowed_engines_are_used_exclusively() {
+    final ProcessEngine first = ProcessEnginePool.borrow("pool-exclusive", ProcessEngineProfile.LEAN);
+    final ProcessEngine second = ProcessEnginePool.borrow("pool-exclusive", ProcessEngineProfile.LEAN);
+    try {
+      assertNotSame(first, second);
+      assertFalse(first.getName().equals(second.getName()));
+    } finally {
+      ProcessEnginePool.release(first);
+      ProcessEnginePool.release(second);
+    }
+  }
+
+  @Test
+  public void released_engine_is_borrowed_again() {
+    final ProcessEngine processEngine = ProcessEnginePool.borrow("pool-release", ProcessEngineProfile.LEAN);
+    ProcessEnginePool.release(processEngine);
+
+    final ProcessEngine borrowed = ProcessEnginePool.borrow("pool-release", NOT_BUILT);
+    ProcessEnginePool.release(borrowed);
+
+    assertSame(processEngine, borrowed);
+  }
+
+  @Test
+  public void knows_key_of_pooled_engines() {
+    final ProcessEngine processEngine = ProcessEnginePool.borrow("pool-key", ProcessEngineProfile.LEAN);
+    ProcessEnginePool.release(processEngine);
+
+    assertTrue(ProcessEnginePool.isPooled(processEngine));
+    assertEquals("pool-key", ProcessEnginePool.keyOf(processEngine));
+    assertFalse(ProcessEnginePool.isPooled(null));
+    assertNull(ProcessEnginePool.keyOf(null));
+  }
+
+  @Test
+  public void borrows_warmed_up_engine() {
+    ProcessEnginePool.warmUp("pool-warm-up", ProcessEngineProfile.LEAN);
+
+    final ProcessEngine processEngine = ProcessEnginePool.borrow("pool-warm-up", NOT_BUILT);
+    ProcessEnginePool.release(processEngine);
+
+    assertEquals("pool-warm-up", ProcessEnginePool.keyOf(processEngine));
+  }
+
+  @Test
+  public void warm_up_keeps_single_idle_engine() {
+    final ProcessEngine processEngine = ProcessEnginePool.borrow("pool-idle", ProcessEngineProfile.LEAN);
+    ProcessEnginePool.release(processEngine);
+
+    ProcessEnginePool.warmUp("pool-idle", NOT_BUILT);
+
+    assertSame(processEngine, ProcessEnginePool.borrow("pool-idle", NOT_BUILT));
+    ProcessEnginePool.release(processEngine);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void rejects_release_of_engine_not_pooled() {
+    final ProcessEngine processEngine = ProcessEngineProfile.LEAN.get().setProcessEngineName("not-pooled")
+        .setJdbcUrl("jdbc:h2:mem:not-pooled;DB_CLOSE_DELAY=1000").buildProcessEngine();
+    try {
+      ProcessEnginePool.release(processEngine);
+    } finally {
+      processEngine.close();
+    }
+  }
+}
@@ -0,0 +1,134 @@
+package org.camunda.bpm.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Set;
+
+import org.camunda.bpm.engine.ProcessEngine;
+import org.camunda.bpm.engine.runtime.ProcessInstance;
+import org.camunda.bpm.model.bpmn.Bpmn;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Sets;
+
+/**
+ * Test of the truncation and the snapshots of engine tables.
+ *
+ * @author Simon Zambrovski, Holisticon AG
+ */
+public class ProcessEngineSnapshotTest {
+
+  private static final String PROCESS = "snapshot";
+
+  private ProcessEngine processEngine;
+  private ProcessEngine other;
+
+  @Before
+  public void borrowEngine() {
+    processEngine = borrow();
+  }
+
+  @After
+  public void releaseEngines() {
+    release(processEngine);
+    if (other != null) {
+      release(other);
+    }
+  }
+
+  @Test
+  public void runs_on_h2() {
+    assertTrue(ProcessEngineTruncation.isSupported(processEngine));
+  }
+
+  @Test
+  public void truncating_instances_keeps_deployments() {
+    start(processEngine);
+
+    ProcessEngineTruncation.truncateInstances(processEngine);
+
+    assertEquals(0, processEngine.getRuntimeService().createProcessInstanceQuery().count());
+    assertEquals(0, processEngine.getTaskService().createTaskQuery().count());
+    assertEquals(0, processEngine.getHistoryService().createHistoricActivityInstanceQuery().count());
+    assertEquals(1, processEngine.getRepositoryService().createDeploymentQuery().count());
+    start(processEngine);
+  }
+
+  @Test
+  public void truncating_all_removes_deployments() {
+    start(processEngine);
+
+    ProcessEngineTruncation.truncateAll(processEngine);
+
+    assertEquals(0, processEngine.getRuntimeService().createProcessInstanceQuery().count());
+    assertEquals(0, processEngine.getRepositoryService().createDeploymentQuery().count());
+    assertEquals(0, processEngine.getRepositoryService().createProcessDefinitionQuery().count());
+  }
+
+  @Test
+  public void restores_snapshot() {
+    final ProcessInstance taken = start(processEngine);
+    final ProcessEngineSnapshot snapshot = ProcessEngineSnapshot.take(processEngine);
+    start(processEngine);
+    processEngine.getTaskService().complete(processEngine.getTaskService().createTaskQuery().processInstanceId(taken.getId()).singleResult().getId());
+
+    snapshot.restore(processEngine);
+
+    assertEquals(1, processEngine.getRuntimeService().createProcessInstanceQuery().count());
+    assertEquals(1, processEngine.getTaskService().createTaskQuery().processInstanceId(taken.getId()).count());
+    assertTrue(ProcessEventPlugin.traceOf(processEngine).isActive(taken.getId(), "task"));
+    start(processEngine);
+  }
+
+  @Test
+  public void restores_snapshot_to_engine_of_same_profile() {
+    final ProcessInstance taken = start(processEngine);
+    final ProcessEngineSnapshot snapshot = ProcessEngineSnapshot.take(processEngine);
+    other = borrow();
+    for (int i = 0; i < 3; i++) {
+      start(other);
+    }
+    assertTrue(snapshot.isRestorableTo(other));
+
+    snapshot.restore(other);
+
+    assertEquals(taken.getId(), other.getRuntimeService().createProcessInstanceQuery().singleResult().getId());
+    // ids generated after the restore do not collide with the restored ones
+    final Set<String> ids = Sets.newHashSet(taken.getId());
+    for (int i = 0; i < 3; i++) {
+      assertTrue(ids.add(start(other).getId()));
+    }
+  }
+
+  @Test
+  public void snapshot_is_not_restorable_to_engine_of_other_profile() {
+    final ProcessEngineSnapshot snapshot = ProcessEngineSnapshot.take(processEngine);
+    final ProcessEngine full = ProcessEnginePool.borrow(ProcessEngineProfile.FULL.name(), ProcessEngineProfile.FULL);
+    try {
+      assertFalse(snapshot.isRestorableTo(full));
+    } finally {
+      ProcessEnginePool.release(full);
+    }
+  }
+
+  private static ProcessInstance start(final ProcessEngine processEngine) {
+    return processEngine.getRuntimeService().startProcessInstanceByKey(PROCESS);
+  }
+
+  private static ProcessEngine borrow() {
+    final ProcessEngine processEngine = ProcessEnginePool.borrow(ProcessEngineProfile.LEAN.name(), ProcessEngineProfile.LEAN);
+    processEngine.getRepositoryService().createDeployment()
+        .addModelInstance(PROCESS + ".bpmn", Bpmn.createExecutableProcess(PROCESS).startEvent().userTask("task").endEvent().done()).deploy();
+    return processEngine;
+  }
+
+  private static void release(final ProcessEngine processEngine) {
+    ProcessEngineTruncation.truncateAll(processEngine);
+    ProcessEventPlugin.traceOf(processEngine).clear();
+    ProcessEnginePool.release(processEngine);
+  }
+}
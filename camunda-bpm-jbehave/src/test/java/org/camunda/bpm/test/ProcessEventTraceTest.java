@@ -0,0 +1,122 @@
+package org.camunda.bpm.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.camunda.bpm.engine.ProcessEngine;
+import org.camunda.bpm.engine.ProcessEngineException;
+import org.camunda.bpm.engine.runtime.ProcessInstance;
+import org.camunda.bpm.model.bpmn.Bpmn;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of the in-memory trace of process instance events.
+ *
+ * @author Simon Zambrovski, Holisticon AG
+ */
+public class ProcessEventTraceTest {
+
+  private static final String PROCESS = "trace";
+
+  private ProcessEngine processEngine;
+  private ProcessEventTrace trace;
+
+  @Before
+  public void borrowEngine() {
+    processEngine = ProcessEnginePool.borrow(ProcessEngineProfile.LEAN.name(), ProcessEngineProfile.LEAN);
+    processEngine.getRepositoryService().createDeployment()
+        .addModelInstance(PROCESS + ".bpmn", Bpmn.createExecutableProcess(PROCESS).startEvent("start").userTask("task").endEvent("end").done())
+        .deploy();
+    trace = ProcessEventPlugin.traceOf(processEngine);
+  }
+
+  @After
+  public void releaseEngine() {
+    ProcessEngineTruncation.truncateAll(processEngine);
+    trace.clear();
+    ProcessEnginePool.release(processEngine);
+  }
+
+  @Test
+  public void traces_waiting_instance() throws Exception {
+    final ProcessInstance processInstance = processEngine.getRuntimeService().startProcessInstanceByKey(PROCESS);
+
+    assertTrue(trace.isActive(processInstance.getId(), "task"));
+    assertTrue(trace.hasPassed(processInstance.getId(), "start"));
+    assertFalse(trace.hasPassed(processInstance.getId(), "task"));
+    assertFalse(trace.isEnded(processInstance.getId()));
+    assertEquals(1, trace.getOpenTasks(processInstance.getId(), "task").size());
+    assertTrue(trace.awaitActivity(processInstance.getId(), "task", 0, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void traces_ended_instance() throws Exception {
+    final ProcessInstance processInstance = processEngine.getRuntimeService().startProcessInstanceByKey(PROCESS);
+    complete(processInstance);
+
+    assertTrue(trace.isEnded(processInstance.getId()));
+    assertTrue(trace.hasPassed(processInstance.getId(), "task"));
+    assertTrue(trace.getOpenTasks(processInstance.getId()).isEmpty());
+    assertTrue(trace.awaitEnd(processInstance.getId(), 0, TimeUnit.SECONDS));
+    assertFalse(trace.awaitActivity(processInstance.getId(), "task", 1, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void times_out_waiting_for_end() throws Exception {
+    final ProcessInstance processInstance = processEngine.getRuntimeService().startProcessInstanceByKey(PROCESS);
+
+    final long start = System.currentTimeMillis();
+    assertFalse(trace.awaitEnd(processInstance.getId(), 100, TimeUnit.MILLISECONDS));
+    assertTrue(System.currentTimeMillis() - start >= 100);
+  }
+
+  @Test
+  public void wakes_up_waiting_thread() throws Exception {
+    final ProcessInstance processInstance = processEngine.getRuntimeService().startProcessInstanceByKey(PROCESS);
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      final Future<Boolean> ended = executor.submit(new Callable<Boolean>() {
+        @Override
+        public Boolean call() throws Exception {
+          return trace.awaitEnd(processInstance.getId(), 10, TimeUnit.SECONDS);
+        }
+      });
+
+      complete(processInstance);
+
+      assertTrue(ended.get(10, TimeUnit.SECONDS));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void ignores_events_of_rolled_back_transactions() {
+    processEngine.getRepositoryService().createDeployment()
+        .addModelInstance("failing.bpmn", Bpmn.createExecutableProcess("failing").startEvent().serviceTask("fail").camundaExpression("${missing}").endEvent().done())
+        .deploy();
+
+    try {
+      processEngine.getRuntimeService().startProcessInstanceByKey("failing");
+      fail("Expression must not be resolved.");
+    } catch (final ProcessEngineException e) {
+      // rolled back
+    }
+
+    assertTrue(trace.snapshot().isEmpty());
+  }
+
+  private void complete(final ProcessInstance processInstance) {
+    processEngine.getTaskService().complete(processEngine.getTaskService().createTaskQuery().processInstanceId(processInstance.getId()).singleResult().getId());
+  }
+}
@@ -0,0 +1,126 @@
+package org.camunda.bpm.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.camunda.bpm.engine.ProcessEngine;
+import org.camunda.bpm.engine.impl.util.ClockUtil;
+import org.camunda.bpm.engine.task.Task;
+import org.camunda.bpm.model.bpmn.Bpmn;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Test of the virtual clocks of concurrently used engines.
+ *
+ * @author Simon Zambrovski, Holisticon AG
+ */
+public class VirtualClockTest {
+
+  private static final String PROCESS = "clock";
+  private static final int INSTANCES = 50;
+
+  private final Date past = new Date(1262304000000L);
+  private final Date future = new Date(1893456000000L);
+
+  private ProcessEngine first;
+  private ProcessEngine second;
+
+  @Before
+  public void borrowEngines() {
+    first = borrow();
+    second = borrow();
+  }
+
+  @After
+  public void releaseEngines() {
+    ClockUtil.reset();
+    release(first);
+    release(second);
+  }
+
+  @Test
+  public void engines_with_different_times_run_in_parallel() throws Exception {
+    VirtualClockPlugin.clockOf(first).setCurrentTime(past);
+    VirtualClockPlugin.clockOf(second).setCurrentTime(future);
+
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      final List<Future<?>> results = Lists.newArrayList();
+      for (int i = 0; i < 2; i++) {
+        results.add(executor.submit(start(first)));
+        results.add(executor.submit(start(second)));
+      }
+      for (final Future<?> result : results) {
+        result.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertCreatedAt(first, past);
+    assertCreatedAt(second, future);
+  }
+
+  @Test
+  public void restores_time_set_on_clock_util() {
+    final Date pinned = new Date(1577836800000L);
+    ClockUtil.setCurrentTime(pinned);
+    VirtualClockPlugin.clockOf(first).setCurrentTime(past);
+
+    first.getRuntimeService().startProcessInstanceByKey(PROCESS);
+
+    assertCreatedAt(first, past);
+    assertEquals(pinned, ClockUtil.getCurrentTime());
+  }
+
+  @Test
+  public void engine_without_time_uses_clock_util() {
+    final Date pinned = new Date(1577836800000L);
+    ClockUtil.setCurrentTime(pinned);
+
+    first.getRuntimeService().startProcessInstanceByKey(PROCESS);
+
+    assertCreatedAt(first, pinned);
+  }
+
+  private static Callable<Void> start(final ProcessEngine processEngine) {
+    return new Callable<Void>() {
+      @Override
+      public Void call() {
+        for (int i = 0; i < INSTANCES; i++) {
+          processEngine.getRuntimeService().startProcessInstanceByKey(PROCESS);
+        }
+        return null;
+      }
+    };
+  }
+
+  private static void assertCreatedAt(final ProcessEngine processEngine, final Date time) {
+    for (final Task task : processEngine.getTaskService().createTaskQuery().list()) {
+      assertEquals(time, task.getCreateTime());
+    }
+  }
+
+  private static ProcessEngine borrow() {
+    final ProcessEngine processEngine = ProcessEnginePool.borrow(ProcessEngineProfile.LEAN.name(), ProcessEngineProfile.LEAN);
+    processEngine.getRepositoryService().createDeployment()
+        .addModelInstance(PROCESS + ".bpmn", Bpmn.createExecutableProcess(PROCESS).startEvent().userTask("task").endEvent().done()).deploy();
+    return processEngine;
+  }
+
+  private static void release(final ProcessEngine processEngine) {
+    VirtualClockPlugin.clockOf(processEngine).reset();
+    ProcessEngineTruncation.truncateAll(processEngine);
+    ProcessEnginePool.release(processEngine);
+  }
+}
@@ -0,0 +1,82 @@
+package org.camunda.bpm.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Test of the latency histogram.
+ *
+ * @author Simon Zambrovski, Holisticon AG
+ */
+public class LatencyHistogramTest {
+
+  private static final double RELATIVE_ERROR = 1.0 / 32;
+
+  @Test
+  public void reports_zero_without_values() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getMeanMillis(), 0);
+    assertEquals(0, histogram.getPercentileMillis(99), 0);
+    assertEquals(0, histogram.getMaxMillis(), 0);
+  }
+
+  @Test
+  public void reports_percentiles_within_relative_error() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 10000; i++) {
+      histogram.record(i, TimeUnit.MICROSECONDS);
+    }
+
+    assertEquals(10000, histogram.getCount());
+    assertEquals(5.0005, histogram.getMeanMillis(), 0.0001);
+    assertEquals(10, histogram.getMaxMillis(), 0);
+    assertWithin(5, histogram.getPercentileMillis(50));
+    assertWithin(9, histogram.getPercentileMillis(90));
+    assertWithin(9.9, histogram.getPercentileMillis(99));
+    assertEquals(10, histogram.getPercentileMillis(100), 0);
+    assertEquals(0.001, histogram.getPercentileMillis(0), 0);
+  }
+
+  @Test
+  public void converts_units() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(2, TimeUnit.MILLISECONDS);
+    histogram.record(-1, TimeUnit.MILLISECONDS);
+
+    assertEquals(2, histogram.getMaxMillis(), 0);
+    assertEquals(1, histogram.getMeanMillis(), 0);
+  }
+
+  @Test
+  public void bucket_bounds_contain_values() {
+    for (long value = 0; value < 1000000; value += 7) {
+      final int index = LatencyHistogram.index(value);
+      assertTrue(value <= LatencyHistogram.upperBound(index));
+      assertTrue(index == 0 || value > LatencyHistogram.upperBound(index - 1));
+    }
+  }
+
+  @Test
+  public void bucket_bounds_are_within_relative_error() {
+    for (long value = 1; value < 1000000; value += 7) {
+      final long upperBound = LatencyHistogram.upperBound(LatencyHistogram.index(value));
+      assertTrue(upperBound - value <= value * RELATIVE_ERROR);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejects_percentile_above_100() {
+    new LatencyHistogram().getPercentileMillis(101);
+  }
+
+  private static void assertWithin(final double expected, final double actual) {
+    assertTrue(String.format("%.3f is not within %.1f%% of %.3f", actual, RELATIVE_ERROR * 100, expected),
+        Math.abs(actual - expected) <= expected * RELATIVE_ERROR);
+  }
+}
@@ -5,6 +5,7 @@ import java.util.List;
 
 import org.camunda.bpm.bdd.JBehaveTestBase;
 import org.camunda.bpm.bdd.steps.CamundaSteps;
+import org.camunda.bpm.bdd.steps.PerformanceSteps;
 import org.camunda.bpm.extension.jbehave.example.simple.steps.SimpleProcessSteps;
 import org.camunda.bpm.test.CamundaSupport;
 import org.jbehave.core.annotations.UsingSteps;
@@ -13,7 +14,7 @@ import org.jbehave.core.annotations.needle.UsingNeedle;
 /**
  * JBehave Tests for processes.
  */
-@UsingSteps(instances = { SimpleProcessSteps.class, CamundaSteps.class })
+@UsingSteps(instances = { SimpleProcessSteps.class, CamundaSteps.class, PerformanceSteps.class })
 @UsingNeedle(provider = { CamundaSupport.class })
 public class SimpleBTest extends JBehaveTestBase {
   @Override
@@ -1,8 +1,6 @@
 package org.camunda.bpm.extension.jbehave.example.simple.steps;
 
 import static org.camunda.bpm.engine.test.assertions.ProcessEngineAssertions.assertThat;
-import static org.camunda.bpm.engine.test.assertions.ProcessEngineTests.complete;
-import static org.camunda.bpm.engine.test.assertions.ProcessEngineTests.task;
 import static org.camunda.bpm.engine.test.assertions.ProcessEngineTests.withVariables;
 import static org.camunda.bpm.test.CamundaSupport.parseStatement;
 import static org.mockito.Mockito.doThrow;
@@ -11,7 +9,6 @@ import javax.inject.Inject;
 
 import org.camunda.bpm.engine.delegate.BpmnError;
 import org.camunda.bpm.engine.runtime.ProcessInstance;
-import org.camunda.bpm.engine.test.mock.Mocks;
 import org.camunda.bpm.extension.jbehave.example.simple.SimpleProcessAdapter;
 import org.camunda.bpm.extension.jbehave.example.simple.SimpleProcessConstants.Elements;
 import org.camunda.bpm.extension.jbehave.example.simple.SimpleProcessConstants.Events;
@@ -40,7 +37,7 @@ public class SimpleProcessSteps {
 
   @BeforeScenario
   public void initMocks() {
-    Mocks.register(SimpleProcessAdapter.NAME, simpleProcessAdapter);
+    support.registerMock(SimpleProcessAdapter.NAME, simpleProcessAdapter);
   }
 
   @AfterScenario
@@ -82,6 +79,6 @@ public class SimpleProcessSteps {
   @When("the contract is processed $withoutErrors")
   public void processManually(final String withoutErrors) {
     final boolean hasErrors = !parseStatement("with errors", withoutErrors, false);
-    complete(task(), withVariables(Variables.ARE_PROCESSING_ERRORS_PRESENT, Boolean.valueOf(hasErrors)));
+    support.completeTask(withVariables(Variables.ARE_PROCESSING_ERRORS_PRESENT, Boolean.valueOf(hasErrors)));
   }
 }